@@ -0,0 +1,337 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    AnimationRenderer is the animation mode of the program. It renders a sequence of numbered PNG frames in a single JVM, following a path of keyframes:
+    the constants of a Julia set (to sweep the constant c) or the ROIs of a Mandelbrot set (to make zoom videos).
+
+    Usage:
+    java Fractal animate [OPTIONS] Julia C_REAL C_IMAG [C_REAL C_IMAG ...] [MAXITR]
+    java Fractal animate [OPTIONS] Mandelbrot REALMIN REALMAX IMAGMIN IMAGMAX [REALMIN REALMAX IMAGMIN IMAGMAX ...] [MAXITR]
+
+    The options are the render options of RenderJob (except --band-height) and
+    --frames N          the number of frames (default 100), spread evenly over the path of the keyframes
+    --output PATTERN    the files of the frames, with a format specifier for the frame number (default julia_%04d.png or mandelbrot_%04d.png)
+    --resume           skip the frames which have already been written, to continue a sequence which was interrupted
+    --parallelism N    the number of threads used to compute the frames
+
+    The constants are interpolated linearly between the keyframes. The sizes of the ROIs are interpolated geometrically, so a zoom goes in at a constant
+    rate, and their centres move in proportion to the change of the size, so the point the zoom heads to stays at the same place of the frames.
+
+    The frames go through three stages which run at the same time: the main thread computes frame N + 2 (in parallel on the shared pool), a colouring
+    thread colours frame N + 1 and an encoder thread writes frame N. The stages are connected by bounded queues and the buffers of the frames are
+    recycled: BUFFERS RenderContext objects (each with its own ComplexPlane object) circulate between the compute and the colouring stages and BUFFERS
+    image buffers between the colouring and the encoder stages, so no buffer is allocated per frame.
+
+    Every frame is written into a temporary file which is renamed once it is complete, so an interrupted sequence never leaves a partial frame behind and
+    --resume only has to check which files exist.
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class AnimationRenderer {
+    // The number of frame buffers of each kind shared by the stages
+    private static final int BUFFERS = 3;
+
+    // A frame going through the stages
+    private static class Frame {
+        final int number;
+        final RenderContext context;
+        int[] rgb;
+        long iterationTime, colorTime;
+
+        Frame(int number, RenderContext context) {
+            this.number = number;
+            this.context = context;
+        }
+    }
+
+    // Marks the end of the sequence in the queues of the stages
+    private static final Frame END = new Frame(-1, null);
+
+    private final RenderJob job;
+    private final String pattern;
+    private final int frames;
+    private final boolean resume;
+    // The constants {real, imaginary} or the ROIs {realMin, realMax, imagMin, imagMax} of the keyframes
+    private final double[][] keyframes;
+
+    public AnimationRenderer(RenderJob job, double[][] keyframes, int frames, String pattern, boolean resume) {
+        this.job = job;
+        this.keyframes = keyframes;
+        this.frames = frames;
+        this.pattern = pattern;
+        this.resume = resume;
+    }
+
+    // Method to print an error message followed by the usage of the animation mode
+    private static void printUsage(String errMessage) {
+        System.out.printf("\u001B[31mError: %s.\033[0m\n", errMessage);
+        System.out.println("Usage: java Fractal animate [OPTIONS] Julia C_REAL C_IMAG [C_REAL C_IMAG ...] [MAXITR]");
+        System.out.println("   or: java Fractal animate [OPTIONS] Mandelbrot REALMIN REALMAX IMAGMIN IMAGMAX [REALMIN REALMAX IMAGMIN IMAGMAX ...] [MAXITR]\n");
+        System.out.println("Renders numbered png frames following the path of the keyframes (the constants of the Julia set or the ROIs of a zoom).\n");
+        System.out.println("Options:");
+        System.out.println("  --frames N         the number of frames (default 100)");
+        System.out.println("  --output PATTERN   the files of the frames, e.g. frames/julia_%04d.png (default julia_%04d.png or mandelbrot_%04d.png)");
+        System.out.println("  --resume           skip the frames which have already been written");
+        System.out.println("  --parallelism N    the number of threads used to compute the frames (default: the number of processors)");
+        System.out.println("  and the options of the render mode: --width, --height, --color, --boundary-tracing, --interior-checks and --simd");
+    }
+
+    // Method to render the frames which have not been written yet. Returns the number of frames rendered.
+    public int render() throws IOException {
+        BlockingQueue<RenderContext> freeContexts = new ArrayBlockingQueue<>(BUFFERS);
+        BlockingQueue<int[]> freeImages = new ArrayBlockingQueue<>(BUFFERS);
+        BlockingQueue<Frame> computed = new ArrayBlockingQueue<>(BUFFERS + 1), colored = new ArrayBlockingQueue<>(BUFFERS + 1);
+        int width = job.getWidth(), height = job.getHeight();
+        for (int i = 0; i < BUFFERS; i++) {
+            RenderContext context = new RenderContext(newPlane(), width, height);
+            job.configure(context);
+            freeContexts.add(context);
+            freeImages.add(new int[width * height]);
+        }
+
+        // The colouring stage. After an error in any stage it only recycles the frames, so the compute stage can finish and report the error.
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicLong colorTime = new AtomicLong(), encodeTime = new AtomicLong();
+        Thread colorer = new Thread(() -> {
+            try {
+                for (Frame frame = computed.take(); frame != END; frame = computed.take()) {
+                    if (error.get() == null) {
+                        int[] rgb = freeImages.take();
+                        try {
+                            frame.colorTime = job.paint(frame.context, 0, height, rgb, 0)[0];
+                            colorTime.addAndGet(frame.colorTime);
+                            frame.rgb = rgb;
+                        } catch (Throwable e) {
+                            error.compareAndSet(null, e);
+                            freeImages.put(rgb);
+                        }
+                    }
+                    freeContexts.put(frame.context);
+                    if (frame.rgb != null)
+                        colored.put(frame);
+                }
+                colored.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "AnimationColorer");
+
+        // The encoder stage. After an error in any stage it keeps recycling the buffers, so the other stages can finish.
+        Thread encoder = new Thread(() -> {
+            try {
+                for (Frame frame = colored.take(); frame != END; frame = colored.take()) {
+                    try {
+                        if (error.get() == null) {
+                            long start = System.nanoTime();
+                            Path path = write(frame);
+                            long time = (System.nanoTime() - start) / 1000000;
+                            encodeTime.addAndGet(time);
+                            System.out.printf("%s (iterations %dms, colouring %dms, encoding %dms)\n", path, frame.iterationTime, frame.colorTime, time);
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                    freeImages.put(frame.rgb);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "AnimationEncoder");
+        colorer.start();
+        encoder.start();
+
+        // The compute stage
+        long start = System.currentTimeMillis(), iterationTime = 0;
+        int rendered = 0, skipped = 0;
+        try {
+            try {
+                for (int i = 0; i < frames && error.get() == null; i++) {
+                    if (resume && Files.exists(getPath(i))) {
+                        skipped++;
+                        continue;
+                    }
+                    Frame frame = new Frame(i, freeContexts.take());
+                    setFrame(frame.context.getPlane(), i);
+                    frame.iterationTime = FractalRenderer.render(frame.context);
+                    iterationTime += frame.iterationTime;
+                    computed.put(frame);
+                    rendered++;
+                }
+            } finally {
+                // The other stages stop even when the compute stage fails
+                computed.put(END);
+                colorer.join();
+                encoder.join();
+            }
+        } catch (InterruptedException e) {
+            colorer.interrupt();
+            encoder.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IOException("The animation was interrupted", e);
+        }
+        Throwable failure = error.get();
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+
+        long time = Math.max(1, System.currentTimeMillis() - start);
+        System.out.printf("Rendered %d frame(s) in %dms (%.2f frames/s), %d already rendered\n", rendered, time, rendered * 1000d / time, skipped);
+        System.out.printf("  busy time of the stages: iterations %dms, colouring %dms, encoding %dms\n", iterationTime, colorTime.get(),
+                encodeTime.get());
+        return rendered;
+    }
+
+    // Method to get the file of the given frame
+    private Path getPath(int frame) {
+        return Paths.get(String.format(pattern, frame));
+    }
+
+    // Method to write a frame into a temporary file and move it to its file once it is complete
+    private Path write(Frame frame) throws IOException {
+        Path path = getPath(frame.number), partial = Paths.get(path + ".part");
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+        try (PngStreamWriter writer = new PngStreamWriter(new BufferedOutputStream(Files.newOutputStream(partial)), job.getWidth(),
+                job.getHeight())) {
+            writer.writeRows(frame.rgb, 0, job.getHeight());
+        }
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return path;
+    }
+
+    // Method to create a ComplexPlane object of the type of the job, with the same maxItr and interior checks
+    private ComplexPlane newPlane() {
+        ComplexPlane plane = job.getPlane() instanceof JuliaSet ? new JuliaSet() : new MandelbrotSet();
+        if (plane instanceof JuliaSet) {
+            double[] roi = job.getPlane().getROI();
+            plane.setROI(roi[0], roi[1], roi[2], roi[3]);
+        }
+        plane.setMaxIterations(job.getPlane().getMaxIterations());
+        plane.setInteriorChecks(job.getPlane().isInteriorChecks());
+        return plane;
+    }
+
+    // Method to set the ComplexPlane object to the view of the given frame, interpolated between the keyframes
+    private void setFrame(ComplexPlane plane, int frame) {
+        double position = frames == 1 ? 0 : (double) frame * (keyframes.length - 1) / (frames - 1);
+        int k = Math.min((int) position, Math.max(0, keyframes.length - 2));
+        double t = position - k;
+        double[] a = keyframes[k], b = keyframes[Math.min(k + 1, keyframes.length - 1)];
+        if (plane instanceof JuliaSet) {
+            ((JuliaSet) plane).setConstant(a[0] + (b[0] - a[0]) * t, a[1] + (b[1] - a[1]) * t);
+            return;
+        }
+        double width0 = a[1] - a[0], width1 = b[1] - b[0], height0 = a[3] - a[2], height1 = b[3] - b[2];
+        double width = width0 * Math.pow(width1 / width0, t), height = height0 * Math.pow(height1 / height0, t);
+        // The fraction of the way from the centre of the first keyframe to the centre of the second one
+        double u = width0 == width1 ? t : (width0 - width) / (width0 - width1);
+        double real = (a[0] + a[1]) / 2 + ((b[0] + b[1]) / 2 - (a[0] + a[1]) / 2) * u;
+        double imaginary = (a[2] + a[3]) / 2 + ((b[2] + b[3]) / 2 - (a[2] + a[3]) / 2) * u;
+        plane.setROI(real - width / 2, real + width / 2, imaginary - height / 2, imaginary + height / 2);
+    }
+
+    public static void main(String[] args) {
+        // Make sure that nothing in the animation mode requires a display
+        System.setProperty("java.awt.headless", "true");
+        // The options of the animation mode, the other arguments are parsed by RenderJob
+        int frames = 100;
+        String pattern = null;
+        boolean resume = false;
+        List<String> jobArgs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--resume"))
+                    resume = true;
+                else if (args[i].equals("--frames")) {
+                    frames = Integer.parseInt(args[++i]);
+                    if (frames <= 0)
+                        throw new IllegalArgumentException();
+                } else if (args[i].equals("--output"))
+                    pattern = args[++i];
+                else if (args[i].equals("--parallelism"))
+                    FractalRenderer.setParallelism(Integer.parseInt(args[++i]));
+                else
+                    jobArgs.add(args[i]);
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            printUsage("Invalid usage of arguments");
+            System.exit(0);
+        }
+
+        RenderJob job = null;
+        double[][] keyframes = null;
+        try {
+            job = RenderJob.parse(jobArgs.toArray(new String[0]));
+            if (!job.getType().equals("Mandelbrot") && !job.getType().equals("Julia"))
+                throw new IllegalArgumentException("Only the Mandelbrot and Julia sets can be animated");
+            if (job.getBandHeight() > 0 || !job.getFormat().equals("png"))
+                throw new IllegalArgumentException("The frames are only written as whole png images");
+            keyframes = parseKeyframes(job, jobArgs.subList(jobArgs.lastIndexOf(job.getType()) + 1, jobArgs.size()));
+        } catch (IllegalArgumentException e) {
+            printUsage(e.getMessage());
+            System.exit(0);
+        }
+
+        if (pattern == null)
+            pattern = job.getType().toLowerCase() + "_%04d.png";
+        try {
+            if (String.format(pattern, 0).equals(String.format(pattern, 1)))
+                throw new IllegalArgumentException();
+        } catch (IllegalArgumentException e) {
+            printUsage("The output pattern must contain the frame number, e.g. frames/julia_%04d.png");
+            System.exit(0);
+        }
+        if (!pattern.toLowerCase().endsWith(".png")) {
+            printUsage("The frames are only written as png images");
+            System.exit(0);
+        }
+
+        try {
+            new AnimationRenderer(job, keyframes, frames, pattern, resume).render();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    // Method to parse the keyframes which follow the type of the fractal: pairs of values for the Julia set and groups of four values for the Mandelbrot
+    // set, optionally followed by MAXITR. Without keyframes the default view of the job is used for every frame.
+    private static double[][] parseKeyframes(RenderJob job, List<String> values) {
+        int size = job.getPlane() instanceof JuliaSet ? 2 : 4, count = values.size() / size;
+        if (values.size() % size > 1)
+            throw new IllegalArgumentException("Invalid usage of arguments");
+        if (values.size() % size == 1)
+            job.getPlane().setMaxIterations((int) Double.parseDouble(values.get(values.size() - 1)));
+        if (count == 0) {
+            if (job.getPlane() instanceof JuliaSet) {
+                Complex c = ((JuliaSet) job.getPlane()).getConstant();
+                return new double[][] { { c.getReal(), c.getImaginary() } };
+            }
+            return new double[][] { job.getPlane().getROI() };
+        }
+        double[][] keyframes = new double[count][size];
+        for (int k = 0; k < count; k++) {
+            for (int j = 0; j < size; j++)
+                keyframes[k][j] = Double.parseDouble(values.get(k * size + j));
+            if (size == 4 && (keyframes[k][1] <= keyframes[k][0] || keyframes[k][3] <= keyframes[k][2]))
+                throw new IllegalArgumentException("Invalid ROI of the keyframe " + (k + 1));
+        }
+        return keyframes;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    BatchRenderer is the headless render mode of the program. It computes the fractal with FractalRenderer, colours it with ColorScheme straight into a
+    BufferedImage and writes the image into a file, without creating any Swing component or starting the AWT event thread.
+
+    Usage:
+    java Fractal render [OPTIONS] Mandelbrot [REALMIN REALMAX IMAGMIN IMAGMAX] [MAXITR]
+    java Fractal render [OPTIONS] Julia [C_REAL C_IMAG] [MAXITR]
+    java Fractal render [OPTIONS] DeepMandelbrot [C_REAL C_IMAG RADIUS] [MAXITR]
+    java Fractal render [OPTIONS] Formula FORMULA [REALMIN REALMAX IMAGMIN IMAGMAX] [MAXITR]
+    java Fractal render [OPTIONS] JuliaFormula FORMULA [C_REAL C_IMAG] [MAXITR]
+    java Fractal render --jobs JOBFILE
+
+    Any of these can be preceded by --parallelism N to set the number of threads used to compute the fractals, and by --concurrency N to render up to N
+    jobs of a job file at the same time. All the concurrent renders share the same pool of threads, and the throughput of the whole batch is reported at
+    the end. --workers HOST:PORT,... computes the jobs on worker JVMs (see RenderWorker and DistributedRenderer). --metrics collects the RenderMetrics of all the renders (also exposed through JMX) and prints them at the end.
+
+    A job file contains one render per line, written with the same arguments as above (Empty lines and lines starting with # are ignored). All the renders
+    of a job file are done in the same JVM, so the JVM start up and the JIT warm up are paid only once.
+*/
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+public class BatchRenderer {
+    // Method to print an error message followed by the usage of the render mode
+    private static void printUsage(String errMessage) {
+        System.out.printf("\u001B[31mError: %s.\033[0m\n", errMessage);
+        System.out.println("Usage: java Fractal render [OPTIONS] Mandelbrot [REALMIN REALMAX IMAGMIN IMAGMAX] [MAXITR]");
+        System.out.println("   or: java Fractal render [OPTIONS] Julia [C_REAL C_IMAG] [MAXITR]");
+        System.out.println("   or: java Fractal render [OPTIONS] DeepMandelbrot [C_REAL C_IMAG RADIUS] [MAXITR]");
+        System.out.println("   or: java Fractal render [OPTIONS] Formula FORMULA [REALMIN REALMAX IMAGMIN IMAGMAX] [MAXITR]");
+        System.out.println("   or: java Fractal render [OPTIONS] JuliaFormula FORMULA [C_REAL C_IMAG] [MAXITR]");
+        System.out.println("   or: java Fractal render --jobs JOBFILE\n");
+        System.out.println("Any of these can be preceded by --parallelism N to set the number of threads (default: the number of processors)");
+        System.out.println("and by --concurrency N to render up to N jobs at the same time (default 1).");
+        System.out.println("--cache-size MB keeps up to MB megabytes of computed tiles in memory for the renders of the same views, and --cache-dir DIR");
+        System.out.println("also keeps them in memory-mapped files in DIR which are reused by later runs.");
+        System.out.println("--workers HOST:PORT,... computes the images on workers started with java Fractal worker (local:N starts N workers in this JVM).");
+        System.out.println("--metrics collects the render metrics (also exposed as the MBean " + RenderMetrics.OBJECT_NAME + ") and prints them at the end.\n");
+        System.out.println("Options:");
+        System.out.println("  --width W          width of the image in pixels (default 800)");
+        System.out.println("  --height H         height of the image in pixels (default 800)");
+        System.out.println("  --output FILE      the file to write the image into (default mandelbrot.png or julia.png)");
+        System.out.println("  --format FORMAT    the image format (default: the extension of the output file)");
+        System.out.println("  --color SCHEME     the colouring scheme, either smooth or gradient (default smooth)");
+        System.out.println("  --band-height N    render and write a png image in bands of N rows to bound the memory used");
+        System.out.println("  --supersample N    sample the pixels on the edges again with N x N jittered samples (2 to 8)");
+        System.out.println("  --dump FILE        also save the computed values into FILE, to colour them again with java Fractal recolor FILE");
+        System.out.println("  --compress-dump    deflate the values of the dump");
+        System.out.println("  --boundary-tracing skip the uniform regions inside the set with the Mariani-Silver algorithm");
+        System.out.println("  --interior-checks  stop iterating points in the main cardioid/bulb and orbits which settled into a cycle");
+        System.out.println("  --symmetry         compute only the unique part of a symmetric view and mirror it into the rest");
+        System.out.println("  --simd             iterate several pixels at once with the Vector API (needs --add-modules jdk.incubator.vector)\n");
+        System.out.println("DeepMandelbrot renders deep zooms around the centre C_REAL + i * C_IMAG (given with any number of digits) with perturbation theory.");
+        System.out.println("Formula iterates the formula FORMULA (e.g. \"z^3 + c\", \"(|re z| + i|im z|)^2 + c\" or one of the names mandelbrot, burningship,");
+        System.out.println("tricorn and celtic) from z = 0, and JuliaFormula iterates it from z = the pixel with the constant c = C_REAL + i * C_IMAG.");
+        System.out.println("A job file contains one render per line written with the same arguments as the first five forms (formulas without spaces).");
+    }
+
+    // Method to read the render jobs in a job file
+    private static List<RenderJob> readJobFile(String path) throws IOException {
+        List<RenderJob> jobs = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(Paths.get(path))) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            try {
+                jobs.add(RenderJob.parse(line.split("\\s+")));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("%s (%s:%d)", e.getMessage(), path, lineNumber));
+            }
+        }
+        return jobs;
+    }
+
+    // Method to render a job and write the image into its output file
+    public static void render(RenderJob job) throws IOException {
+        if (job.getBandHeight() > 0) {
+            long start = System.currentTimeMillis();
+            long[] times = StreamingRenderer.render(job);
+            System.out.printf("%s: %dx%d %s set in bands of %d rows (iterations %dms, colouring %dms, total %dms)\n", job.getOutput(),
+                    job.getWidth(), job.getHeight(), job.getType(), job.getBandHeight(), times[0], times[1],
+                    System.currentTimeMillis() - start);
+            printSupersampling(job, times[2]);
+            if (job.getPlane().isInteriorChecks())
+                System.out.printf("  the interior checks saved %d iterations\n", job.getPlane().getSavedIterations());
+            return;
+        }
+
+        int width = job.getWidth(), height = job.getHeight();
+        RenderContext context = new RenderContext(job.getPlane(), width, height);
+        job.configure(context);
+        long iterationTime = job.render(context);
+
+        // Colour the pixels straight into the raster of the image
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] rgb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        long[] coloring = job.paint(context, 0, height, rgb, 0);
+
+        if (!ImageIO.write(image, job.getFormat(), new File(job.getOutput())))
+            throw new IOException("No image writer found for the format " + job.getFormat());
+        System.out.printf("%s: %dx%d %s set (iterations %dms, colouring %dms)\n  %s\n", job.getOutput(), width, height,
+                job.getType(), iterationTime, coloring[0], context.getReport());
+        printSupersampling(job, coloring[1]);
+        if (job.getDump() != null) {
+            long start = System.nanoTime();
+            IterationDump.write(context, Paths.get(job.getDump()), job.isCompressDump());
+            System.out.printf("  values dumped into %s (%d bytes) in %dms\n", job.getDump(), Files.size(Paths.get(job.getDump())),
+                    (System.nanoTime() - start) / 1000000);
+        }
+        if (job.getPlane().isInteriorChecks())
+            System.out.printf("  the interior checks saved %d iterations\n", job.getPlane().getSavedIterations());
+        if (job.getPlane() instanceof PerturbationMandelbrot) {
+            PerturbationMandelbrot deep = (PerturbationMandelbrot) job.getPlane();
+            System.out.printf("  reference orbit of %d points, %d rebases\n", deep.getReferenceLength(), deep.getRebases());
+        }
+    }
+
+    // Method to print the number of pixels refined by the adaptive supersampling of a job
+    private static void printSupersampling(RenderJob job, long refined) {
+        if (job.getSupersample() == 0)
+            return;
+        long pixels = (long) job.getWidth() * job.getHeight();
+        System.out.printf("  %d of %d pixels (%.1f%%) supersampled with %dx%d samples (%.1f%% of the samples of a full supersample)\n", refined,
+                pixels, 100d * refined / pixels, job.getSupersample(), job.getSupersample(),
+                100d * (pixels + refined * job.getSupersample() * job.getSupersample()) / (pixels * job.getSupersample() * job.getSupersample()));
+    }
+
+    public static void main(String[] args) {
+        // Make sure that nothing in the render mode requires a display
+        System.setProperty("java.awt.headless", "true");
+        if (args.length == 0) {
+            printUsage("Missing FractalType operand");
+            System.exit(0);
+        }
+
+        // The options shared by all the render jobs
+        int concurrency = 1, cacheSize = 0;
+        String cacheDirectory = null;
+        boolean metrics = false;
+        List<InetSocketAddress> workers = null;
+        while (args[0].equals("--parallelism") || args[0].equals("--concurrency") || args[0].equals("--cache-size")
+                || args[0].equals("--cache-dir") || args[0].equals("--metrics") || args[0].equals("--workers")) {
+            try {
+                if (args[0].equals("--workers")) {
+                    try {
+                        workers = DistributedRenderer.parseWorkers(args[1]);
+                    } catch (IOException e) {
+                        printUsage("Could not start the local workers");
+                        System.exit(0);
+                    }
+                    args = Arrays.copyOfRange(args, 2, args.length);
+                    if (args.length == 0) {
+                        printUsage("Missing FractalType operand");
+                        System.exit(0);
+                    }
+                    continue;
+                }
+                if (args[0].equals("--metrics")) {
+                    metrics = true;
+                    RenderMetrics.enable();
+                    args = Arrays.copyOfRange(args, 1, args.length);
+                    if (args.length == 0) {
+                        printUsage("Missing FractalType operand");
+                        System.exit(0);
+                    }
+                    continue;
+                }
+                if (args[0].equals("--cache-dir")) {
+                    cacheDirectory = args[1];
+                    args = Arrays.copyOfRange(args, 2, args.length);
+                    if (args.length == 0) {
+                        printUsage("Missing FractalType operand");
+                        System.exit(0);
+                    }
+                    continue;
+                }
+                int value = Integer.parseInt(args[1]);
+                if (args[0].equals("--parallelism"))
+                    FractalRenderer.setParallelism(value);
+                else if (value <= 0)
+                    throw new IllegalArgumentException();
+                else if (args[0].equals("--concurrency"))
+                    concurrency = value;
+                else
+                    cacheSize = value;
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                printUsage("Invalid value for the option " + args[0]);
+                System.exit(0);
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+            if (args.length == 0) {
+                printUsage("Missing FractalType operand");
+                System.exit(0);
+            }
+        }
+
+        List<RenderJob> jobs = new ArrayList<>();
+        try {
+            if (args[0].equals("--jobs")) {
+                if (args.length != 2) {
+                    printUsage("Invalid usage of arguments");
+                    System.exit(0);
+                }
+                jobs = readJobFile(args[1]);
+            } else
+                jobs.add(RenderJob.parse(args));
+        } catch (IllegalArgumentException e) {
+            printUsage(e.getMessage());
+            System.exit(0);
+        } catch (IOException e) {
+            printUsage("Could not read the job file " + args[1]);
+            System.exit(0);
+        }
+        if (jobs.isEmpty()) {
+            printUsage("The job file " + args[1] + " has no jobs");
+            System.exit(0);
+        }
+
+        // The tile cache shared by all the jobs (the on-disk tier defaults to 64MB of tiles in memory)
+        TileCache cache = null;
+        if (cacheSize > 0 || cacheDirectory != null) {
+            try {
+                cache = new TileCache((cacheSize > 0 ? cacheSize : 64) * 1048576L, cacheDirectory == null ? null : Paths.get(cacheDirectory));
+            } catch (IOException e) {
+                printUsage("Could not create the cache directory " + cacheDirectory);
+                System.exit(0);
+            }
+            for (RenderJob job : jobs)
+                job.setTileCache(cache);
+        }
+        for (RenderJob job : jobs)
+            job.setWorkers(workers);
+
+        long start = System.currentTimeMillis(), pixels = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, jobs.size()));
+        List<Future<?>> renders = new ArrayList<>();
+        for (RenderJob job : jobs) {
+            renders.add(executor.submit(() -> {
+                render(job);
+                return null;
+            }));
+            pixels += (long) job.getWidth() * job.getHeight();
+        }
+        executor.shutdown();
+        // Wait until all the jobs get completed
+        for (Future<?> render : renders) {
+            try {
+                render.get();
+            } catch (ExecutionException | InterruptedException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+        long time = Math.max(1, System.currentTimeMillis() - start);
+        System.out.printf("Rendered %d image(s) in %dms (%.2f images/s, %.2f megapixels/s)\n", jobs.size(), time,
+                jobs.size() * 1000d / time, pixels / 1000d / time);
+        if (cache != null)
+            System.out.println(cache);
+        if (metrics)
+            System.out.println(RenderMetrics.get());
+    }
+}
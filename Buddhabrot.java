@@ -0,0 +1,390 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    Buddhabrot computes the orbit density of the Mandelbrot set (the Buddhabrot): random points c are sampled from the square [-2, 2] x [-2, 2], the
+    orbit z -> z^2 + c of every point which escapes is traced again, and every point of the orbit which falls in the view adds to the count of its
+    pixel. With several channels (the Nebulabrot) every channel has its own maxItr and only counts the orbits which escape within it, e.g. the red,
+    green and blue channels of 5000, 500 and 50 iterations.
+
+    The samples are taken in batches of the batch size (the last batch of a render may be smaller), each split into tasks of TASK_SAMPLES samples on the shared pool of the FractalRenderer class. A task never
+    writes into the shared histogram: it adds its orbits into a private shard (a histogram of its own, taken from a queue of free shards and given
+    back when the task is done, so there are only as many shards as tasks running at the same time). Once all the tasks of a batch are done, the
+    shards are merged into the histogram in parallel, every merge task adding a range of pixels of all the shards, and cleared for the next batch.
+
+    The samples are importance sampled: most of the square contributes nothing (the points inside the set never escape and most of the points far from
+    it escape at once), so before the first batch the square is divided into GRID x GRID cells and the contribution of every cell (the number of points
+    its orbits leave in the view) is estimated with PROBES orbits. The cells are then sampled in proportion to the square root of their contribution
+    (plus FLOOR times the mean, so no cell is left out) and every sample is weighted by the inverse of the probability of its cell, so the histogram
+    converges to the same density as with uniform samples, with less noise for the same time. The square root (rather than the contribution itself)
+    keeps the weights of the cells whose few probes missed the rare long orbits from producing bright speckles. The points inside the main cardioid
+    and the period-2 bulb are rejected without being iterated.
+
+    The random numbers of a task only depend on the seed, the number of the batch and the number of the task, so the samples do not depend on the
+    number of threads, and a render which is saved after a full batch (see save) and continued later (see load) with the batch size of the checkpoint
+    takes the same samples as a render which was never interrupted.
+
+    A checkpoint holds the parameters and the histogram, all big endian:
+      MAGIC 'FBUD' (int), VERSION (short), the width and the height (2 ints), the ROI (4 doubles), the number of channels (byte) and their maxItr
+      (ints), minItr (int), the seed (long), the batch size (long), importance sampling (boolean), the number of samples and of batches taken
+      (2 longs), then the histogram of every channel in row major order (doubles)
+    It is written into a temporary file which is renamed once it is complete, so an interrupted save never replaces a checkpoint with a partial one.
+*/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+public class Buddhabrot {
+    public static final int MAGIC = 0x46425544;
+    public static final short VERSION = 2;
+    // The samples are taken from the square [-DOMAIN, DOMAIN] x [-DOMAIN, DOMAIN], which contains the Mandelbrot set
+    private static final double DOMAIN = 2d;
+    // The number of cells per side of the importance map and the number of orbits which estimate the contribution of a cell
+    private static final int GRID = 64, PROBES = 32;
+    // The smallest probability of a cell, as a fraction of the mean probability
+    private static final double FLOOR = 0.3;
+    // The number of samples taken by a task
+    private static final int TASK_SAMPLES = 1 << 14;
+    // The number of tasks which merge the shards
+    private static final int MERGE_TASKS = 64;
+
+    private final int width, height, minItr, maxItr;
+    // The maxItr of every channel
+    private final int[] channels;
+    private final double[] roi;
+    private final long seed, batch;
+    private final boolean importance;
+    // The mapping of the complex numbers to the pixels of the view
+    private final double realOrigin, imagOrigin, scale;
+    // The histograms of the channels, one after the other
+    private final double[] histogram;
+    private long samples, batches;
+    // The cumulative probabilities of the cells of the importance map and the weights of their samples, or null until the map is built
+    private double[] cumulative, weights;
+    // The shards which are not used by a task
+    private final ConcurrentLinkedQueue<double[]> shards = new ConcurrentLinkedQueue<>();
+    private final LongAdder iterations = new LongAdder(), orbits = new LongAdder();
+
+    // Creates the Buddhabrot of the given view (mapped like a ComplexPlane object), with a channel for every maxItr, whose samples are taken in
+    // batches of the given size
+    public Buddhabrot(int width, int height, double[] roi, int[] channels, int minItr, long seed, long batch, boolean importance) {
+        if (channels.length == 0 || channels.length > 3)
+            throw new IllegalArgumentException("Invalid number of channels " + channels.length);
+        for (int channel : channels)
+            if (channel < 1 || channel <= minItr)
+                throw new IllegalArgumentException("Invalid maxItr " + channel);
+        if (batch < 1)
+            throw new IllegalArgumentException("Invalid batch size " + batch);
+        this.width = width;
+        this.height = height;
+        this.roi = roi.clone();
+        this.channels = channels.clone();
+        this.minItr = minItr;
+        this.seed = seed;
+        this.batch = batch;
+        this.importance = importance;
+        this.maxItr = Arrays.stream(channels).max().getAsInt();
+        ComplexPlane plane = new MandelbrotSet();
+        plane.setROI(roi[0], roi[1], roi[2], roi[3]);
+        plane.setCanvasSize(width, height);
+        this.realOrigin = plane.getReal(0);
+        this.imagOrigin = plane.getImaginary(0);
+        this.scale = plane.getPixelSize();
+        this.histogram = new double[channels.length * width * height];
+    }
+
+    // Runs a method for every integer 0 <= i < count on the shared pool, splitting the range in halves
+    private static class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from, to;
+        private final transient IntConsumer body;
+
+        Range(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                body.accept(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Range(from, middle, body), new Range(middle, to, body));
+        }
+    }
+
+    private static void parallel(int count, IntConsumer body) {
+        if (count > 0)
+            FractalRenderer.getPool().invoke(new Range(0, count, body));
+    }
+
+    // Method to check whether the point c = real + i * imaginary is inside the main cardioid or the period-2 bulb (and never escapes)
+    private static boolean isInMainBulbs(double real, double imaginary) {
+        double imag2 = imaginary * imaginary, q = (real - 0.25) * (real - 0.25) + imag2;
+        return q * (q + (real - 0.25)) <= 0.25 * imag2 || (real + 1) * (real + 1) + imag2 <= 0.0625;
+    }
+
+    // Method to iterate the orbit of c = real + i * imaginary, storing its points into orbit. Returns the number of iterations after which it escapes
+    // (the number of points stored), or -1 if it does not escape within maxItr.
+    private int trace(double real, double imaginary, double[] orbit) {
+        if (isInMainBulbs(real, imaginary))
+            return -1;
+        double zReal = 0, zImag = 0, zReal2 = 0, zImag2 = 0;
+        int count = 0;
+        // Escape radius = 2
+        while (count < maxItr && zReal2 + zImag2 <= 4) {
+            zImag = 2 * zReal * zImag + imaginary;
+            zReal = zReal2 - zImag2 + real;
+            zReal2 = zReal * zReal;
+            zImag2 = zImag * zImag;
+            orbit[2 * count] = zReal;
+            orbit[2 * count + 1] = zImag;
+            count++;
+        }
+        iterations.add(count);
+        return zReal2 + zImag2 > 4 ? count : -1;
+    }
+
+    // Method to get the index of the pixel of the view which contains the point z, or -1 if it is outside of the view
+    private int pixel(double zReal, double zImag) {
+        double x = (zReal - realOrigin) / scale + 0.5, y = (imagOrigin - zImag) / scale + 0.5;
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            return -1;
+        return (int) y * width + (int) x;
+    }
+
+    // Method to estimate the contribution of every cell of the square and turn them into the probabilities of the cells
+    private void buildImportance() {
+        int cells = GRID * GRID;
+        double[] contributions = new double[cells];
+        double size = 2 * DOMAIN / GRID;
+        if (importance) {
+            parallel(GRID, row -> {
+                double[] orbit = new double[2 * maxItr];
+                for (int column = 0; column < GRID; column++) {
+                    SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL * (row * GRID + column + 1));
+                    long points = 0;
+                    for (int probe = 0; probe < PROBES; probe++) {
+                        int count = trace(-DOMAIN + (column + random.nextDouble()) * size, -DOMAIN + (row + random.nextDouble()) * size, orbit);
+                        if (count >= minItr)
+                            for (int i = 0; i < count; i++)
+                                if (pixel(orbit[2 * i], orbit[2 * i + 1]) >= 0)
+                                    points++;
+                    }
+                    contributions[row * GRID + column] = Math.sqrt((double) points / PROBES);
+                }
+            });
+        }
+        double total = 0;
+        for (double contribution : contributions)
+            total += contribution;
+        // Without any contribution (or without importance sampling) the cells are sampled uniformly
+        double floor = total > 0 ? FLOOR * total / cells : 1;
+        total += floor * cells;
+        double[] cumulative = new double[cells], weights = new double[cells];
+        double sum = 0;
+        for (int i = 0; i < cells; i++) {
+            double probability = (contributions[i] + floor) / total;
+            sum += probability;
+            cumulative[i] = sum;
+            // The weight of a sample compared to a uniform sample, whose cell has the probability 1 / cells
+            weights[i] = 1 / (cells * probability);
+        }
+        cumulative[cells - 1] = 1;
+        this.weights = weights;
+        this.cumulative = cumulative;
+    }
+
+    // Method to take the samples of a task of a batch into a shard
+    private void sample(long batch, int task, int count) {
+        double[] shard = shards.poll();
+        if (shard == null)
+            shard = new double[histogram.length];
+        SplittableRandom random = new SplittableRandom(seed + 0x9E3779B97F4A7C15L * (batch + 1) + 0xC2B2AE3D27D4EB4FL * (task + 1));
+        double[] orbit = new double[2 * maxItr];
+        double size = 2 * DOMAIN / GRID;
+        int pixels = width * height;
+        long contributing = 0;
+        for (int s = 0; s < count; s++) {
+            // Pick a cell with its probability, then a point of the cell
+            int cell = Arrays.binarySearch(cumulative, random.nextDouble());
+            cell = Math.min(cell < 0 ? -cell - 1 : cell, cumulative.length - 1);
+            double real = -DOMAIN + (cell % GRID + random.nextDouble()) * size, imaginary = -DOMAIN + (cell / GRID + random.nextDouble()) * size;
+            int escape = trace(real, imaginary, orbit);
+            if (escape < minItr)
+                continue;
+            contributing++;
+            double weight = weights[cell];
+            for (int i = 0; i < escape; i++) {
+                int index = pixel(orbit[2 * i], orbit[2 * i + 1]);
+                if (index < 0)
+                    continue;
+                // Every channel counts the orbits which escape within its maxItr
+                for (int k = 0; k < channels.length; k++)
+                    if (escape <= channels[k])
+                        shard[k * pixels + index] += weight;
+            }
+        }
+        orbits.add(contributing);
+        shards.add(shard);
+    }
+
+    // Method to take a batch of samples (at most the batch size) and merge them into the histogram. Returns the time taken in nanoseconds.
+    public long run(long count) {
+        if (count < 1 || count > batch)
+            throw new IllegalArgumentException("Invalid number of samples " + count + " of a batch");
+        long start = System.nanoTime();
+        if (cumulative == null)
+            buildImportance();
+        long batch = batches;
+        int tasks = (int) ((count + TASK_SAMPLES - 1) / TASK_SAMPLES);
+        parallel(tasks, task -> sample(batch, task, (int) Math.min(TASK_SAMPLES, count - (long) task * TASK_SAMPLES)));
+        // Every merge task adds a range of the pixels of all the shards and clears it
+        parallel(MERGE_TASKS, part -> {
+            int from = (int) ((long) histogram.length * part / MERGE_TASKS), to = (int) ((long) histogram.length * (part + 1) / MERGE_TASKS);
+            for (double[] shard : shards)
+                for (int i = from; i < to; i++) {
+                    histogram[i] += shard[i];
+                    shard[i] = 0;
+                }
+        });
+        samples += count;
+        batches++;
+        return System.nanoTime() - start;
+    }
+
+    // Method to build the importance map ahead of the first batch (it is otherwise built by the first batch). Returns the time taken in nanoseconds.
+    public long prepare() {
+        long start = System.nanoTime();
+        if (cumulative == null)
+            buildImportance();
+        return System.nanoTime() - start;
+    }
+
+    // Method to colour the histogram into ARGB pixels: a grey image for a single channel, and the red, green and blue channels otherwise. The density
+    // is scaled by the largest count of each channel and brightened with a square root.
+    public void paint(int[] rgb) {
+        int pixels = width * height;
+        double[] max = new double[channels.length];
+        for (int k = 0; k < channels.length; k++)
+            for (int i = 0; i < pixels; i++)
+                max[k] = Math.max(max[k], histogram[k * pixels + i]);
+        for (int i = 0; i < pixels; i++) {
+            int color = 0xFF000000;
+            for (int k = 0; k < channels.length; k++) {
+                int value = max[k] > 0 ? (int) Math.round(255 * Math.sqrt(histogram[k * pixels + i] / max[k])) : 0;
+                color |= channels.length == 1 ? value * 0x010101 : value << (16 - 8 * k);
+            }
+            rgb[i] = color;
+        }
+    }
+
+    // Method to save the parameters and the histogram into a checkpoint file
+    public void save(Path path) throws IOException {
+        Path partial = Paths.get(path + ".part");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            for (double value : roi)
+                out.writeDouble(value);
+            out.writeByte(channels.length);
+            for (int channel : channels)
+                out.writeInt(channel);
+            out.writeInt(minItr);
+            out.writeLong(seed);
+            out.writeLong(batch);
+            out.writeBoolean(importance);
+            out.writeLong(samples);
+            out.writeLong(batches);
+            for (double value : histogram)
+                out.writeDouble(value);
+        }
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Method to load a checkpoint file, to continue the render with more batches
+    public static Buddhabrot load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a Buddhabrot checkpoint");
+            int version = in.readShort();
+            if (version != VERSION)
+                throw new IOException("Unsupported version " + version + " of the checkpoint");
+            int width = in.readInt(), height = in.readInt();
+            double[] roi = { in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble() };
+            int[] channels = new int[in.readByte()];
+            for (int k = 0; k < channels.length; k++)
+                channels[k] = in.readInt();
+            if (width <= 0 || height <= 0 || (long) width * height * channels.length > Integer.MAX_VALUE)
+                throw new IOException("Invalid size of the checkpoint");
+            Buddhabrot buddhabrot;
+            try {
+                buddhabrot = new Buddhabrot(width, height, roi, channels, in.readInt(), in.readLong(), in.readLong(), in.readBoolean());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid parameters of the checkpoint: " + e.getMessage());
+            }
+            buddhabrot.samples = in.readLong();
+            buddhabrot.batches = in.readLong();
+            for (int i = 0; i < buddhabrot.histogram.length; i++)
+                buddhabrot.histogram[i] = in.readDouble();
+            return buddhabrot;
+        }
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int[] getChannels() {
+        return this.channels.clone();
+    }
+
+    // Method to get the number of samples of a batch
+    public long getBatchSize() {
+        return this.batch;
+    }
+
+    public boolean isImportanceSampling() {
+        return this.importance;
+    }
+
+    // Method to get the number of samples taken so far
+    public long getSamples() {
+        return this.samples;
+    }
+
+    public long getBatches() {
+        return this.batches;
+    }
+
+    // Method to get the number of iterations computed so far (by this JVM, including the importance map)
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    // Method to get the number of orbits which escaped after at least minItr iterations so far (by this JVM)
+    public long getOrbits() {
+        return orbits.sum();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    BuddhabrotRenderer is the orbit density mode of the program. It renders the Buddhabrot (or with --nebula the Nebulabrot) of the given view into an
+    image file (see Buddhabrot), taking the samples in batches and reporting the throughput of every batch.
+
+    Usage:
+    java Fractal buddhabrot [OPTIONS] [REALMIN REALMAX IMAGMIN IMAGMAX]
+
+    Options:
+    --width W, --height H   the size of the image (default 800 x 800)
+    --output FILE           the image file (default buddhabrot.png or nebulabrot.png), in the format of its extension
+    --samples N             the total number of samples (default 20000000, e.g. 1e9)
+    --batch N               the number of samples of a batch (default 2000000)
+    --maxitr N              the maxItr of the Buddhabrot (default 1000)
+    --nebula R,G,B          render the Nebulabrot with the maxItr of the red, green and blue channels (e.g. 5000,500,50)
+    --min-itr N             leave out the orbits which escape within N iterations (default 0)
+    --seed N                the seed of the samples (default 1)
+    --uniform               sample the points uniformly instead of importance sampling them
+    --checkpoint FILE       save the histograms into FILE after every batch
+    --resume                continue the render saved in the checkpoint FILE (with its own view, size, maxItr, seed and batch) up to --samples
+                            samples
+    --parallelism N         the number of threads (default: the number of processors)
+    --scaling               instead of rendering, measure the samples per second of one batch with 1, 2, 4, ... threads up to --parallelism
+*/
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.imageio.ImageIO;
+
+public class BuddhabrotRenderer {
+    // Method to print an error message followed by the usage of the orbit density mode
+    private static void printUsage(String errMessage) {
+        System.out.printf("\u001B[31mError: %s.\033[0m\n", errMessage);
+        System.out.println("Usage: java Fractal buddhabrot [OPTIONS] [REALMIN REALMAX IMAGMIN IMAGMAX]\n");
+        System.out.println("Renders the density of the orbits of the points which escape the Mandelbrot set (the Buddhabrot) into an image file.\n");
+        System.out.println("Options:");
+        System.out.println("  --width W          width of the image in pixels (default 800)");
+        System.out.println("  --height H         height of the image in pixels (default 800)");
+        System.out.println("  --output FILE      the file to write the image into (default buddhabrot.png or nebulabrot.png)");
+        System.out.println("  --samples N        the total number of random points sampled (default 20000000, e.g. 1e9)");
+        System.out.println("  --batch N          the number of samples taken between two reports and checkpoints (default 2000000)");
+        System.out.println("  --maxitr N         the maximum number of iterations of the orbits (default 1000)");
+        System.out.println("  --nebula R,G,B     render the Nebulabrot: the maxItr of the red, green and blue channels (e.g. 5000,500,50)");
+        System.out.println("  --min-itr N        leave out the orbits which escape within N iterations (default 0)");
+        System.out.println("  --seed N           the seed of the random samples (default 1)");
+        System.out.println("  --uniform          sample the points uniformly instead of sampling the points near the boundary of the set more");
+        System.out.println("  --checkpoint FILE  save the render into FILE after every batch");
+        System.out.println("  --resume           continue the render saved in the checkpoint (with its own view, size, maxItr, seed and batch)");
+        System.out.println("  --parallelism N    the number of threads (default: the number of processors)");
+        System.out.println("  --scaling          measure the samples per second of a batch with 1, 2, 4, ... threads instead of rendering");
+    }
+
+    private static int parsePositive(String value) {
+        int n = Integer.parseInt(value);
+        if (n <= 0)
+            throw new IllegalArgumentException("Invalid value " + value);
+        return n;
+    }
+
+    // Method to parse a number of samples, which can be written in scientific notation (e.g. 1e9)
+    private static long parseSamples(String value) {
+        double n = Double.parseDouble(value);
+        if (!(n >= 1) || n > Long.MAX_VALUE || n != Math.rint(n))
+            throw new IllegalArgumentException("Invalid number of samples " + value);
+        return (long) n;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int width = 800, height = 800, minItr = 0, parallelism = FractalRenderer.getParallelism();
+        int[] channels = { 1000 };
+        long samples = 20000000, batch = 2000000, seed = 1;
+        boolean nebula = false, uniform = false, resume = false, scaling = false;
+        String output = null, checkpoint = null;
+        double[] roi = { -2d, 1d, -1.5d, 1.5d };
+        try {
+            int i = 0;
+            for (; i < args.length && args[i].startsWith("--"); i++) {
+                switch (args[i]) {
+                    case "--width":
+                        width = parsePositive(args[++i]);
+                        break;
+                    case "--height":
+                        height = parsePositive(args[++i]);
+                        break;
+                    case "--output":
+                        output = args[++i];
+                        break;
+                    case "--samples":
+                        samples = parseSamples(args[++i]);
+                        break;
+                    case "--batch":
+                        batch = parseSamples(args[++i]);
+                        break;
+                    case "--maxitr":
+                        channels = new int[] { parsePositive(args[++i]) };
+                        break;
+                    case "--nebula": {
+                        String[] values = args[++i].split(",");
+                        if (values.length != 3)
+                            throw new IllegalArgumentException();
+                        channels = new int[] { parsePositive(values[0]), parsePositive(values[1]), parsePositive(values[2]) };
+                        nebula = true;
+                        break;
+                    }
+                    case "--min-itr":
+                        minItr = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--uniform":
+                        uniform = true;
+                        break;
+                    case "--checkpoint":
+                        checkpoint = args[++i];
+                        break;
+                    case "--resume":
+                        resume = true;
+                        break;
+                    case "--parallelism":
+                        parallelism = parsePositive(args[++i]);
+                        break;
+                    case "--scaling":
+                        scaling = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException();
+                }
+            }
+            if (args.length - i == 4) {
+                for (int j = 0; j < 4; j++)
+                    roi[j] = Double.parseDouble(args[i + j]);
+                if (roi[0] >= roi[1] || roi[2] >= roi[3])
+                    throw new IllegalArgumentException();
+            } else if (args.length != i)
+                throw new IllegalArgumentException();
+            if (minItr < 0 || (resume && checkpoint == null))
+                throw new IllegalArgumentException();
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            printUsage("Invalid usage of arguments");
+            System.exit(0);
+        }
+        FractalRenderer.setParallelism(parallelism);
+
+        Buddhabrot buddhabrot = null;
+        try {
+            if (resume && Files.exists(Paths.get(checkpoint))) {
+                buddhabrot = Buddhabrot.load(Paths.get(checkpoint));
+                nebula = buddhabrot.getChannels().length == 3;
+                System.out.printf("Resuming %s: %d samples in %d batches of %d\n", checkpoint, buddhabrot.getSamples(), buddhabrot.getBatches(),
+                        buddhabrot.getBatchSize());
+            } else
+                buddhabrot = new Buddhabrot(width, height, roi, channels, minItr, seed, batch, !uniform);
+        } catch (IllegalArgumentException e) {
+            printUsage(e.getMessage());
+            System.exit(0);
+        } catch (IOException e) {
+            printUsage("Could not resume " + checkpoint + ": " + e.getMessage());
+            System.exit(0);
+        }
+
+        if (scaling) {
+            measureScaling(width, height, roi, channels, minItr, seed, !uniform, batch, parallelism);
+            System.exit(0);
+        }
+        if (output == null)
+            output = nebula ? "nebulabrot.png" : "buddhabrot.png";
+        try {
+            render(buddhabrot, samples, checkpoint == null ? null : Paths.get(checkpoint), output);
+        } catch (IOException e) {
+            printUsage("Could not write " + e.getMessage());
+            System.exit(0);
+        }
+        System.exit(0);
+    }
+
+    // Method to take the samples in batches (of the batch size of the Buddhabrot, so a resumed render takes the same samples) up to the given total,
+    // saving a checkpoint after every batch, and write the image
+    private static void render(Buddhabrot buddhabrot, long total, Path checkpoint, String output) throws IOException {
+        System.out.printf("Map of the contributions of the cells computed in %dms\n", buddhabrot.prepare() / 1000000);
+        long start = System.nanoTime(), first = buddhabrot.getSamples();
+        while (buddhabrot.getSamples() < total) {
+            long count = Math.min(buddhabrot.getBatchSize(), total - buddhabrot.getSamples()), iterations = buddhabrot.getIterations();
+            long nanos = buddhabrot.run(count);
+            long saveTime = 0;
+            if (checkpoint != null) {
+                long saveStart = System.nanoTime();
+                try {
+                    buddhabrot.save(checkpoint);
+                } catch (IOException e) {
+                    throw new IOException(checkpoint + ": " + e.getMessage());
+                }
+                saveTime = (System.nanoTime() - saveStart) / 1000000;
+            }
+            System.out.printf("batch %d: %d/%d samples, %.2fM samples/s, %.1fM iterations/s%s\n", buddhabrot.getBatches(), buddhabrot.getSamples(),
+                    total, count * 1e3 / nanos, (buddhabrot.getIterations() - iterations) * 1e3 / nanos,
+                    checkpoint == null ? "" : String.format(", checkpoint saved in %dms", saveTime));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int width = buddhabrot.getWidth(), height = buddhabrot.getHeight();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        buddhabrot.paint(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+        int dot = output.lastIndexOf('.');
+        String format = dot < 0 ? "png" : output.substring(dot + 1).toLowerCase();
+        if (!ImageIO.write(image, format, new File(output)))
+            throw new IOException(output + ": no image writer found for the format " + format);
+        System.out.printf("%s: %dx%d image of %d samples (%d orbits traced by this run) in %.1fs, %.2fM samples/s with %d threads\n", output, width, height,
+                buddhabrot.getSamples(), buddhabrot.getOrbits(), seconds, (buddhabrot.getSamples() - first) / seconds / 1e6,
+                FractalRenderer.getParallelism());
+    }
+
+    // Method to measure the samples per second of a batch with 1, 2, 4, ... threads up to the given parallelism
+    private static void measureScaling(int width, int height, double[] roi, int[] channels, int minItr, long seed, boolean importance, long batch,
+            int parallelism) {
+        double base = 0;
+        for (int threads = 1;; threads = Math.min(2 * threads, parallelism)) {
+            FractalRenderer.setParallelism(threads);
+            Buddhabrot buddhabrot = new Buddhabrot(width, height, roi, channels, minItr, seed, batch, importance);
+            buddhabrot.prepare();
+            // A warm up batch, then the measured batch
+            buddhabrot.run(Math.max(1, batch / 4));
+            double rate = batch * 1e9 / buddhabrot.run(batch);
+            if (threads == 1)
+                base = rate;
+            System.out.printf("%3d threads: %8.3fM samples/s, speedup %5.2fx, efficiency %3.0f%%\n", threads, rate / 1e6, rate / base,
+                    100 * rate / base / threads);
+            if (threads == parallelism)
+                break;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    CachedTileRenderer is a derived class from RecursiveAction which renders a RenderContext through a TileCache: the context is covered by the tiles of
+    the mapping of its ComplexPlane object, which are rendered as separate tasks. A tile found in the cache is copied into the buffers of the context,
+    and a missing tile is computed as a whole (with the IterationCounter or MarianiSilver tasks, like a context of its own), stored in the cache and then
+    copied. The tiles on the edges of the context are computed as a whole too, so they can be reused by other views.
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+public class CachedTileRenderer extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int TILE_SIZE = TileCache.TILE_SIZE;
+
+    private RenderContext context;
+    private transient TileCache cache;
+    private transient LoadReport report;
+    // The coordinates of the tile on the mapping, or the whole context if tile is false
+    private int tx, ty;
+    private boolean tile;
+
+    // Creates the task which renders the whole RenderContext object
+    public CachedTileRenderer(RenderContext context, TileCache cache, LoadReport report) {
+        this.context = context;
+        this.cache = cache;
+        this.report = report;
+    }
+
+    private CachedTileRenderer(RenderContext context, TileCache cache, LoadReport report, int tx, int ty) {
+        this(context, cache, report);
+        this.tx = tx;
+        this.ty = ty;
+        this.tile = true;
+    }
+
+    @Override
+    protected void compute() {
+        ComplexPlane plane = context.getPlane();
+        // The pixel (x, y) of the context is the pixel (x + offsetX, y + offsetY) of the mapping
+        int offsetX = context.getLeft() - plane.getShiftX(), offsetY = context.getTop() - plane.getShiftY();
+        if (!tile) {
+            List<CachedTileRenderer> tiles = new ArrayList<>();
+            for (int j = Math.floorDiv(offsetY, TILE_SIZE); j * TILE_SIZE < offsetY + context.getHeight(); j++)
+                for (int i = Math.floorDiv(offsetX, TILE_SIZE); i * TILE_SIZE < offsetX + context.getWidth(); i++)
+                    tiles.add(new CachedTileRenderer(context, cache, report, i, j));
+            invokeAll(tiles);
+            return;
+        }
+        if (context.isCancelled())
+            return;
+
+        String key = TileCache.key(plane, tx, ty);
+        long start = LoadReport.now();
+        TileCache.Tile cached = cache.get(key);
+        boolean hit = cached != null;
+        if (!hit) {
+            // Compute the whole tile in a context of its own
+            RenderContext tileContext = new RenderContext(plane, tx * TILE_SIZE + plane.getShiftX(), ty * TILE_SIZE + plane.getShiftY(), TILE_SIZE,
+                    TILE_SIZE);
+            tileContext.setReport(report);
+            tileContext.setRowKernel(context.getRowKernel());
+            if (context.isBoundaryTracing())
+                new MarianiSilver(tileContext, report).invoke();
+            else
+                new IterationCounter(tileContext, 0, 0, TILE_SIZE, TILE_SIZE, report).invoke();
+            // A tile computed while the render was being cancelled may be incomplete
+            if (context.isCancelled())
+                return;
+            cached = new TileCache.Tile();
+            System.arraycopy(tileContext.getIterationsCount(), 0, cached.iterationsCount, 0, TILE_SIZE * TILE_SIZE);
+            System.arraycopy(tileContext.getSmoothColors(), 0, cached.smoothColors, 0, TILE_SIZE * TILE_SIZE);
+            cache.put(key, cached);
+        }
+
+        // Copy the part of the tile which is inside the context
+        int x0 = Math.max(0, tx * TILE_SIZE - offsetX), x1 = Math.min(context.getWidth(), (tx + 1) * TILE_SIZE - offsetX);
+        int y0 = Math.max(0, ty * TILE_SIZE - offsetY), y1 = Math.min(context.getHeight(), (ty + 1) * TILE_SIZE - offsetY);
+        for (int y = y0; y < y1; y++) {
+            int from = (y + offsetY - ty * TILE_SIZE) * TILE_SIZE + x0 + offsetX - tx * TILE_SIZE;
+            System.arraycopy(cached.iterationsCount, from, context.getIterationsCount(), context.index(x0, y), x1 - x0);
+            System.arraycopy(cached.smoothColors, from, context.getSmoothColors(), context.index(x0, y), x1 - x0);
+        }
+        // The tasks which computed a missing tile have already reported their time
+        if (hit) {
+            report.addSkipped((long) (x1 - x0) * (y1 - y0));
+            report.addTile(LoadReport.now() - start);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    ColorPass is a derived class from RecursiveAction which colours rows of a RenderContext into an int array of ARGB pixels with one of the colouring
+    schemes of the ColorScheme class. The rows are split into halves until a task has at most MAX_ROWS rows, so the rows are coloured in parallel.
+*/
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+public class ColorPass extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    // The maximum number of rows coloured by one task
+    private static final int MAX_ROWS = 16;
+
+    private RenderContext context;
+    private int scheme, y0, y1, step, offset;
+    private int[] rgb;
+
+    // Creates the task which colours the rows y0 <= y < y1 of the context into rgb, starting at offset
+    public ColorPass(int scheme, RenderContext context, int y0, int y1, int step, int[] rgb, int offset) {
+        this.scheme = scheme;
+        this.context = context;
+        this.y0 = y0;
+        this.y1 = y1;
+        this.step = step;
+        this.rgb = rgb;
+        this.offset = offset;
+    }
+
+    @Override
+    protected void compute() {
+        int width = context.getWidth();
+        if (y1 - y0 > MAX_ROWS) {
+            int middle = (y0 + y1) / 2;
+            invokeAll(new ColorPass(scheme, context, y0, middle, step, rgb, offset),
+                    new ColorPass(scheme, context, middle, y1, step, rgb, offset + (middle - y0) * width));
+            return;
+        }
+
+        for (int y = y0, row = offset; y < y1; y++, row += width) {
+            // The row of the pixels which the row is coloured from
+            int sample = y - y % step;
+            if (step == 1) {
+                if (scheme == ColorScheme.GRADIENT)
+                    for (int x = 0; x < width; x++)
+                        rgb[row + x] = ColorScheme.getRGB2(context, x, y, 1);
+                else
+                    for (int x = 0; x < width; x++)
+                        rgb[row + x] = ColorScheme.getRGB1(context, x, y);
+                continue;
+            }
+            for (int x = 0; x < width; x += step) {
+                int color = scheme == ColorScheme.GRADIENT ? ColorScheme.getRGB2(context, x, sample, step) : ColorScheme.getRGB1(context, x, sample);
+                Arrays.fill(rgb, row + x, row + Math.min(x + step, width), color);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    ColorScheme contains the two colouring schemes used to colour the fractals from the pre-computed values of a RenderContext:
+    (01). Smooth Colouring scheme (which is very similar to the coloring scheme used in the Mandelbrot set picture on Wikipedia)
+    (02). Gradient Colouring scheme (Gradient colour bands with smooth edges)
+
+    Both schemes are precomputed into lookup tables of ARGB colours when the class is loaded, so colouring a pixel is a table lookup which does not
+    call Math.pow or allocate Color objects:
+      - The smooth scheme is a function of the potential value only, so it is sampled SMOOTH_STEPS times per unit of the potential value (the potential
+        values are quantized to the nearest sample, which is less than a quarter of a colour level apart).
+      - The gradient scheme averages the colour of a pixel with the pixels on its left and above it, so the averages of every combination of the 16
+        colours of the gradientMap are precomputed.
+
+    The pixels are coloured straight into int arrays (e.g. the DataBufferInt of a BufferedImage or a band of a streamed image) by ColorPass tasks which
+    colour the rows in parallel, so the colours can be changed at any time without computing the iterations again.
+
+    It only uses java.awt.Color to build the tables so that it can be used both by the GUI and the headless render mode.
+*/
+
+import java.awt.Color;
+
+public class ColorScheme {
+    public static final int SMOOTH = 1, GRADIENT = 2;
+    // The colour of the pixels inside the set
+    public static final int BLACK = 0xFF000000;
+    // The number of samples of the smooth scheme per unit of the potential value
+    private static final int SMOOTH_STEPS = 4096;
+
+    // Used to store 16 points of a gradient which is used by the gradient colouring scheme
+    private static final Color[] gradientMap = {
+            new Color(66, 30, 15), new Color(25, 7, 26), new Color(9, 1, 47), new Color(4, 4, 73),
+            new Color(0, 7, 100), new Color(12, 44, 138), new Color(24, 82, 177), new Color(57, 125, 209),
+            new Color(134, 181, 229), new Color(211, 236, 248), new Color(241, 233, 191), new Color(248, 201, 95),
+            new Color(255, 170, 0), new Color(204, 128, 0), new Color(153, 87, 0), new Color(106, 52, 3) };
+
+    // The colours of the potential values 0 <= smooth <= 2 (the larger ones are black)
+    private static final int[] smoothPalette = new int[2 * SMOOTH_STEPS + 1];
+    // The colours of the gradientMap, their averages with the colour of one neighbour (indexed by neighbour * 16 + colour) and with the colours of both
+    // neighbours (indexed by (above * 16 + left) * 16 + colour)
+    private static final int[] gradient1 = new int[16], gradient2 = new int[16 * 16], gradient3 = new int[16 * 16 * 16];
+
+    static {
+        for (int i = 0; i < smoothPalette.length; i++)
+            smoothPalette[i] = smoothColor((double) i / SMOOTH_STEPS);
+        for (int c = 0; c < 16; c++) {
+            gradient1[c] = gradientMap[c].getRGB();
+            for (int left = 0; left < 16; left++) {
+                Color avg = average(gradientMap[left], gradientMap[c]);
+                gradient2[left * 16 + c] = avg.getRGB();
+                for (int above = 0; above < 16; above++)
+                    gradient3[(above * 16 + left) * 16 + c] = average(gradientMap[above], avg).getRGB();
+            }
+        }
+    }
+
+    // Method to parse the name of a colouring scheme (either smooth or gradient)
+    public static int parse(String name) {
+        if (name.equals("smooth"))
+            return SMOOTH;
+        if (name.equals("gradient"))
+            return GRADIENT;
+        throw new IllegalArgumentException("Unknown colouring scheme " + name);
+    }
+
+    // Method to get the ARGB colour of a pixel using the given colouring scheme
+    public static int getRGB(int scheme, RenderContext context, int x, int y) {
+        return scheme == GRADIENT ? getRGB2(context, x, y, 1) : getRGB1(context, x, y);
+    }
+
+    // Method to colour the rows y0 <= y < y1 of the given RenderContext object into rgb (in row major order, starting at offset) in parallel.
+    // With a step larger than 1 only the pixels whose coordinates are multiples of step are coloured, each filling the step x step block to its
+    // right and below it (see ProgressivePass). Returns the time taken in milliseconds.
+    public static long paint(int scheme, RenderContext context, int y0, int y1, int step, int[] rgb, int offset) {
+        RenderMetrics.ColoringEvent event = new RenderMetrics.ColoringEvent();
+        event.begin();
+        long start = System.nanoTime();
+        FractalRenderer.getPool().invoke(new ColorPass(scheme, context, y0, y1, step, rgb, offset));
+        long nanos = System.nanoTime() - start, pixels = (long) (y1 - y0) * context.getWidth();
+        RenderMetrics.recordColoring(pixels, nanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.scheme = scheme;
+            event.pixels = pixels;
+            event.commit();
+        }
+        return nanos / 1000000;
+    }
+
+    // Smooth coloring scheme
+    static int getRGB1(RenderContext context, int x, int y) {
+        if (context.getIterations(x, y) >= context.getPlane().getMaxIterations())
+            return BLACK;
+        return getSmoothRGB(context.getSmooth(x, y));
+    }
+
+    // Method to get the ARGB colour of a single sample (e.g. a sample of a supersampled pixel) from its number of iterations and its potential value.
+    // The gradient scheme colours the sample without averaging it with its neighbours.
+    static int getSampleRGB(int scheme, int count, double smooth, int maxItr) {
+        if (count >= maxItr)
+            return BLACK;
+        return scheme == GRADIENT ? gradient1[count % 16] : getSmoothRGB(smooth);
+    }
+
+    // Method to get the colour of a potential value from the table of the smooth scheme
+    private static int getSmoothRGB(double smooth) {
+        // Also maps the potential values which are not numbers to the first colour
+        int i = (int) Math.min(Math.max(smooth * SMOOTH_STEPS + 0.5, 0), smoothPalette.length - 1);
+        return smoothPalette[i];
+    }
+
+    // Gradient coloring scheme with anit-aliased (kind of) edges. The neighbours are step pixels away, so that the pixels of a coarse pass of a
+    // progressive render are coloured from the pixels computed in the same pass.
+    static int getRGB2(RenderContext context, int x, int y, int step) {
+        if (context.getIterations(x, y) >= context.getPlane().getMaxIterations())
+            return BLACK;
+        int c = context.getIterations(x, y) % 16;
+        if (x >= step && y >= step)
+            return gradient3[((context.getIterations(x, y - step) % 16) * 16 + context.getIterations(x - step, y) % 16) * 16 + c];
+        if (x >= step)
+            return gradient2[(context.getIterations(x - step, y) % 16) * 16 + c];
+        if (y >= step)
+            return gradient2[(context.getIterations(x, y - step) % 16) * 16 + c];
+        return gradient1[c];
+    }
+
+    // Method to compute the colour of a potential value with the smooth colouring scheme
+    private static int smoothColor(double smooth) {
+        double red = 0, green = 0, blue = 0;
+        if (smooth < 1.0) {
+            red = Math.pow(smooth, 4);
+            green = Math.pow(smooth, 2.5);
+            blue = smooth;
+        } else {
+            smooth = Math.max(0, 2 - smooth);
+            red = smooth;
+            green = Math.pow(smooth, 1.5);
+            blue = Math.pow(smooth, 3);
+        }
+        return new Color((float) red, (float) green, (float) blue, 1.0f).getRGB();
+    }
+
+    // Method to get the average of two colours
+    private static Color average(Color c1, Color c2) {
+        return new Color((c1.getRed() + c2.getRed()) / 2, (c1.getGreen() + c2.getGreen()) / 2, (c1.getBlue() + c2.getBlue()) / 2, 255);
+    }
+}
@@ -1,46 +1,84 @@
 /*
     Copyright (C) 2020, Sathira Silva. (E/17/331)
     
-    The ComplexPlane class is the base class for the ComplexPlane objects. It contains methods to map the pixels in a a canvas of 800 x 800 to Complex values, methods
+    The ComplexPlane class is the base class for the ComplexPlane objects. It contains methods to map the pixels in a a canvas of 800 x 800 to complex values, methods
     to get and set the Region Of Interest of the complex plane and an abstract method to count iterations to create fractal sets with methods to get and set the
     maximum number of iterations required for the fractal computations.
+
+    The size of the canvas defaults to 800 x 800 but is set by the RenderContext object which the ComplexPlane object is rendered into (so a ComplexPlane
+    object should only be used by one RenderContext object at a time).
+
+    The pixels are not mapped into a grid of Complex objects in advance. Instead the mapping is a linear function (real = realOrigin + x * scale and
+    imaginary = imagOrigin - y * scale) whose coefficients are updated whenever the Region Of Interest or the canvas size changes, and the iteration
+    kernels evaluate it on primitive doubles for each pixel. A translation by whole pixels only changes an integer offset of the pixel coordinates, so the
+    pixels which are still in the view map to exactly the same complex numbers as before and their values can be reused.
+
+    The kernels of the MandelbrotSet and JuliaSet classes can also resume an orbit from its last point (see resumeIterations), so that raising maxItr
+    only continues the orbits of the pixels which had not escaped (see OrbitStore).
+
+    The fractals which are symmetric (the Mandelbrot set about the real axis and the filled Julia sets about 0) tell so with getSymmetry, so that only
+    the unique part of a symmetric view has to be computed (see SymmetricRenderer).
+
+    When the interior checks are switched on, the kernels stop iterating the points which are known to be inside the set (points in the main cardioid
+    or the period-2 bulb of the Mandelbrot set, and orbits which have settled into a cycle) and count them as maxItr. The number of iterations saved
+    this way is counted so that it can be reported.
 */
 
+import java.util.concurrent.atomic.LongAdder;
+
+
 public abstract class ComplexPlane {
-    private static final int WIDTH = 800, HEIGHT = 800;
+    private int width = 800, height = 800;
 
     private double realMin = -1d, realMax = 1d, imagMin = -1d, imagMax = 1d;
-    protected static Complex[][] Plane = new Complex[WIDTH][HEIGHT];
     protected int maxItr = 1000;
+    // Whether the kernels stop iterating the points which are known to be inside the set
+    protected boolean interiorChecks = false;
+    // The number of iterations skipped by the interior checks
+    protected final LongAdder savedIterations = new LongAdder();
+    // The symmetries of the fractals: none, the value of conj(c) is the value of c, or the value of -c is the value of c
+    public static final int NO_SYMMETRY = 0, REAL_AXIS = 1, ORIGIN = 2;
+    // Two points of an orbit closer than this (in both parts) are considered to be the same point of a cycle
+    protected static final double PERIOD_EPSILON = 1e-13;
+    // Coefficients of the mapping from the pixel coordinates to the complex numbers
+    private double scale, realOrigin, imagOrigin;
+    // The number of pixels by which the view has been translated since the mapping was last updated
+    private int shiftX, shiftY;
 
-    // Method which maps complex numbers to each pixel on the canvas
-    private void mapCanvas2ComplexPlane() {
-        for (int x = 0; x < WIDTH; x++)
-            for (int y = 0; y < HEIGHT; y++)
-                Plane[x][y] = pixel2Complex(x, y);
+    // Method which updates the mapping from the pixels on the canvas to the complex numbers
+    private void updateMapping() {
+        // Calculated for unstretched zooming (to make the x and y axis in the same scale)
+        scale = Math.min((this.realMax - this.realMin) / width, (this.imagMax - this.imagMin) / height);
+        realOrigin = this.realMin + (this.realMax - this.realMin - scale * width) / 2d;
+        imagOrigin = this.imagMax - (this.imagMax - this.imagMin - scale * height) / 2d;
+        shiftX = shiftY = 0;
     }
 
-    // Method which converts the pixel coordinates to complex numbers
-    private Complex pixel2Complex(int x, int y) {
-        Complex z = new Complex();
-        // Calculated for unstretched zooming (to make the x and y axis in the same scale)
-        double min = Math.min(this.realMax - this.realMin, this.imagMax - this.imagMin);
-        z.setReal(this.realMin + x * min / (double) WIDTH + (this.realMax - this.realMin - min) / 2d);
-        z.setImaginary(this.imagMax - y * min / (double) HEIGHT - (this.imagMax - this.imagMin - min) / 2d);
-        return z;
+    // Method which converts the x coordinate of a pixel to the real part of a complex number
+    public double getReal(double x) {
+        return realOrigin + (x - shiftX) * scale;
+    }
+
+    // Method which converts the y coordinate of a pixel to the imaginary part of a complex number
+    public double getImaginary(double y) {
+        return imagOrigin - (y - shiftY) * scale;
+    }
+
+    // Method to get the distance between two adjacent pixels on the complex plane
+    public double getPixelSize() {
+        return scale;
     }
 
     public ComplexPlane() {
-        mapCanvas2ComplexPlane();
+        updateMapping();
     }
 
     public ComplexPlane(double realMin, double realMax, double imagMin, double imagMax) {
-        this();
         this.realMin = realMin;
         this.realMax = realMax;
         this.imagMin = imagMin;
         this.imagMax = imagMax;
-        mapCanvas2ComplexPlane();
+        updateMapping();
     }
 
     public ComplexPlane(double realMin, double realMax, double imagMin, double imagMax, int maxItr) {
@@ -54,7 +92,57 @@ public abstract class ComplexPlane {
         this.realMax = realMax;
         this.imagMin = imagMin;
         this.imagMax = imagMax;
-        mapCanvas2ComplexPlane();
+        updateMapping();
+    }
+
+    // Method to move the Region Of Interest so that the contents of the canvas move by (dx, dy) pixels. The scale of the mapping is kept as it is, so
+    // the pixel (x + dx, y + dy) maps to exactly the same complex number which the pixel (x, y) used to map to.
+    public void translate(int dx, int dy) {
+        double real = dx * scale, imaginary = dy * scale;
+        this.realMin -= real;
+        this.realMax -= real;
+        this.imagMin += imaginary;
+        this.imagMax += imaginary;
+        shiftX += dx;
+        shiftY += dy;
+    }
+
+    // Method to get the number of pixels by which the view has been translated since the mapping was last updated: the pixel (x, y) of the canvas is
+    // the pixel (x - getShiftX(), y - getShiftY()) of the mapping
+    public int getShiftX() {
+        return this.shiftX;
+    }
+
+    public int getShiftY() {
+        return this.shiftY;
+    }
+
+    // Method to get a string which identifies the fractal and the mapping of the pixels (without the translation). Two ComplexPlane objects with the
+    // same key compute exactly the same values for the same pixel of the mapping, so the key is used to look up the tiles of the TileCache class.
+    public String getMappingKey() {
+        return getMappingKey(maxItr);
+    }
+
+    // Method to get the mapping key the ComplexPlane object would have with the given maxItr
+    public String getMappingKey(int maxItr) {
+        return String.format("%s/%d/%b/%a/%a/%a", getClass().getName(), maxItr, interiorChecks, realOrigin, imagOrigin, scale);
+    }
+
+    // Method to set the size of the canvas which the Region Of Interest is mapped into
+    public void setCanvasSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        updateMapping();
+    }
+
+    // Method to get the width of the canvas
+    public int getWidth() {
+        return this.width;
+    }
+
+    // Method to get the height of the canvas
+    public int getHeight() {
+        return this.height;
     }
 
     // Method to get the Region Of Interest
@@ -72,5 +160,66 @@ public abstract class ComplexPlane {
         return this.maxItr;
     }
 
-    public abstract int countIterations(int x, int y);
+    // Method to switch the interior checks (cardioid and bulb tests and periodicity detection) on or off
+    public void setInteriorChecks(boolean interiorChecks) {
+        this.interiorChecks = interiorChecks;
+    }
+
+    public boolean isInteriorChecks() {
+        return this.interiorChecks;
+    }
+
+    // Method to get the number of iterations skipped by the interior checks so far
+    public long getSavedIterations() {
+        return savedIterations.sum();
+    }
+
+    // Method to count the iterations of the pixel (x, y) of the given RenderContext object. Both the number of iterations and the potential value
+    // used for smooth colouring are stored in the buffers of the RenderContext object.
+    public int countIterations(RenderContext context, int x, int y) {
+        int index = context.index(x, y);
+        return context.getIterationsCount()[index] = countPixel(context.getLeft() + x, context.getTop() + y,
+                context.getSmoothColors(), index);
+    }
+
+    // Method to count the iterations of the pixels x0 <= x < x1 of the row y of the given RenderContext object. Returns the total number of iterations.
+    public long countRow(RenderContext context, int x0, int x1, int y) {
+        long iterations = 0;
+        for (int x = x0; x < x1; x++)
+            iterations += countIterations(context, x, y);
+        return iterations;
+    }
+
+    // Method to count the iterations of the point at the (possibly fractional) pixel coordinates (x, y) of the canvas which stores its potential
+    // value in smooth[index]. The ComplexPlane objects which need more precision than a double to locate a pixel override this method.
+    public int countPixel(double x, double y, double[] smooth, int index) {
+        return countIterations(getReal(x), getImaginary(y), smooth, index);
+    }
+
+    // Method to count the iterations of the complex number (real, imaginary) which stores its potential value in smooth[index]
+    public abstract int countIterations(double real, double imaginary, double[] smooth, int index);
+
+    // Method to count the iterations of the complex number (real, imaginary) like countIterations, but continuing its orbit from the point
+    // z = orbit[2 * i] + i * orbit[2 * i + 1] which it reached after count iterations (count = 0 starts the orbit from the beginning). The last point of
+    // the orbit is stored back into orbit, so an orbit which reaches maxItr can be continued once maxItr is raised.
+    // Returns -1 if the ComplexPlane object cannot resume its orbits (see canResumeOrbits).
+    public int resumeIterations(double real, double imaginary, double[] orbit, int i, int count, double[] smooth, int index) {
+        return -1;
+    }
+
+    // Method to check whether the ComplexPlane object can resume its orbits with resumeIterations
+    public boolean canResumeOrbits() {
+        return false;
+    }
+
+    // Method to prepare the ComplexPlane object for a render before its tasks start, e.g. to compute the data shared by all the pixels once instead of
+    // checking it for every pixel. FractalRenderer calls it before every render.
+    public void prepare() {
+    }
+
+    // Method to get the symmetry of the fractal (NO_SYMMETRY, REAL_AXIS or ORIGIN). The kernel must compute exactly the same values (bit for bit) for
+    // a point and its mirror image.
+    public int getSymmetry() {
+        return NO_SYMMETRY;
+    }
 }
@@ -0,0 +1,215 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    DistributedRenderer is the coordinator of a distributed render: it splits a RenderContext into tiles of TILE_SIZE x TILE_SIZE pixels and hands them
+    out over TCP to worker JVMs (see RenderWorker), which compute them with the usual kernels and send back their iteration counts and potential values
+    in the binary format of the TileProtocol class. The tiles are copied straight into the buffers of the context.
+
+    Every worker is served by a thread of its own which keeps up to WINDOW tiles in flight on it, taking the next tile from a shared queue as soon as a
+    result comes back. So the load is balanced dynamically: a fast worker (or one which got cheap tiles outside of the set) simply takes more tiles, and
+    the worker never waits for the coordinator between two tiles.
+
+    When a worker fails (its connection is closed or it does not answer within TIMEOUT milliseconds) the tiles in flight on it are put back at the
+    front of the queue, to be retried by the other workers. A tile which has failed MAX_ATTEMPTS times, and the tiles left when every worker has failed,
+    are computed locally, so the render always completes.
+
+    The LoadReport of the render has one entry per worker (the time taken by the worker to compute its tiles), so it shows how evenly the tiles were
+    spread over the workers.
+
+    Workers are given as HOST:PORT addresses. local:N starts N workers inside this JVM on free ports of the loopback address, which talk to the
+    coordinator over real sockets (they share the pool of this JVM, so they only serve to try the whole protocol on a single machine).
+*/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DistributedRenderer {
+    // The size of the tiles handed out to the workers
+    public static final int TILE_SIZE = 128;
+    // The number of tiles in flight on a worker
+    private static final int WINDOW = 3;
+    // The number of times a tile is sent to the workers before it is computed locally
+    private static final int MAX_ATTEMPTS = 3;
+    // The time (in milliseconds) to connect to a worker and to wait for a result before the worker is considered dead
+    private static final int CONNECT_TIMEOUT = 5000, TIMEOUT = 120000;
+
+    // A tile of the context {x, y, width, height}
+    private static class Tile {
+        final int id, x, y, width, height;
+        int attempts;
+
+        Tile(int id, int x, int y, int width, int height) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final RenderContext context;
+    private final List<InetSocketAddress> workers;
+    private final LoadReport report = new LoadReport();
+    private final BlockingDeque<Tile> queue = new LinkedBlockingDeque<>();
+    // The tiles which failed MAX_ATTEMPTS times
+    private final ConcurrentLinkedQueue<Tile> failed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger remaining = new AtomicInteger(), retries = new AtomicInteger();
+
+    private DistributedRenderer(RenderContext context, List<InetSocketAddress> workers) {
+        this.context = context;
+        this.workers = workers;
+    }
+
+    // Method to compute the iterationsCount and smoothColors buffers of the given RenderContext object on the given workers.
+    // Returns the time taken for the computation in milliseconds.
+    public static long render(RenderContext context, List<InetSocketAddress> workers) {
+        long start = System.nanoTime();
+        new DistributedRenderer(context, workers).render();
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private void render() {
+        context.setReport(report);
+        long start = System.nanoTime();
+        int id = 0;
+        for (int y = 0; y < context.getHeight(); y += TILE_SIZE)
+            for (int x = 0; x < context.getWidth(); x += TILE_SIZE)
+                queue.add(new Tile(id++, x, y, Math.min(TILE_SIZE, context.getWidth() - x), Math.min(TILE_SIZE, context.getHeight() - y)));
+        remaining.set(id);
+
+        List<Thread> threads = new ArrayList<>();
+        for (InetSocketAddress address : workers) {
+            Thread thread = new Thread(() -> serve(address), "Coordinator-" + address);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                context.cancel();
+            }
+        }
+
+        // Compute the tiles which could not be computed by the workers
+        List<Tile> local = new ArrayList<>(failed);
+        queue.drainTo(local);
+        if (!local.isEmpty()) {
+            System.err.printf("Warning: computing %d tile(s) locally\n", local.size());
+            List<IterationCounter> tasks = new ArrayList<>();
+            for (Tile tile : local)
+                tasks.add(new IterationCounter(context, tile.x, tile.y, tile.width, tile.height, report));
+            context.getPlane().prepare();
+            FractalRenderer.getPool().invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        report.finish(System.nanoTime() - start, workers.size());
+        RenderMetrics.recordRender(context, report);
+        if (retries.get() > 0)
+            System.err.printf("Warning: %d tile(s) were sent again after a worker failed\n", retries.get());
+    }
+
+    // Method to hand out the tiles to a worker until every tile is done or the worker fails
+    private void serve(InetSocketAddress address) {
+        Map<Integer, Tile> inFlight = new HashMap<>();
+        try (Socket socket = new Socket()) {
+            socket.connect(address, CONNECT_TIMEOUT);
+            socket.setSoTimeout(TIMEOUT);
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            TileProtocol.writeJob(out, context);
+            ComplexPlane plane = context.getPlane();
+            // The pixel (x, y) of the context is the pixel (x + offsetX, y + offsetY) of the mapping
+            int offsetX = context.getLeft() - plane.getShiftX(), offsetY = context.getTop() - plane.getShiftY();
+
+            while (remaining.get() > 0 && !context.isCancelled()) {
+                // Fill the window, waiting a little for the tiles of a failed worker when nothing is in flight
+                while (inFlight.size() < WINDOW) {
+                    Tile tile = inFlight.isEmpty() ? queue.poll(10, TimeUnit.MILLISECONDS) : queue.poll();
+                    if (tile == null)
+                        break;
+                    inFlight.put(tile.id, tile);
+                    TileProtocol.writeTile(out, tile.id, tile.x + offsetX, tile.y + offsetY, tile.width, tile.height);
+                }
+                out.flush();
+                if (inFlight.isEmpty())
+                    continue;
+
+                byte type = in.readByte();
+                if (type == TileProtocol.ERROR)
+                    throw new IOException(in.readUTF());
+                if (type != TileProtocol.RESULT)
+                    throw new IOException("Unexpected message " + type);
+                Tile tile = inFlight.remove(in.readInt());
+                if (tile == null)
+                    throw new IOException("Result of an unknown tile");
+                long[] result = TileProtocol.readResult(in, context, tile.x, tile.y, tile.width, tile.height);
+                report.addTile(result[0]);
+                report.addIterations(result[1]);
+                report.addComputed((long) tile.width * tile.height);
+                remaining.decrementAndGet();
+            }
+            out.writeByte(TileProtocol.END);
+            out.flush();
+        } catch (IOException e) {
+            System.err.printf("Warning: the worker %s failed: %s\n", address, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Put the tiles in flight on a failed worker back into the queue
+        for (Tile tile : inFlight.values()) {
+            if (++tile.attempts < MAX_ATTEMPTS) {
+                retries.incrementAndGet();
+                queue.addFirst(tile);
+            } else {
+                failed.add(tile);
+                remaining.decrementAndGet();
+            }
+        }
+    }
+
+    // Method to parse a comma separated list of HOST:PORT addresses of workers, or local:N to start N workers in this JVM
+    public static List<InetSocketAddress> parseWorkers(String value) throws IOException {
+        List<InetSocketAddress> workers = new ArrayList<>();
+        if (value.startsWith("local:")) {
+            int count = Integer.parseInt(value.substring(6));
+            if (count <= 0)
+                throw new IllegalArgumentException();
+            for (int i = 0; i < count; i++) {
+                RenderWorker worker = new RenderWorker(0, InetAddress.getLoopbackAddress(), false).start();
+                workers.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), worker.getPort()));
+            }
+            return workers;
+        }
+        for (String address : value.split(",")) {
+            int colon = address.lastIndexOf(':');
+            workers.add(colon < 0 ? new InetSocketAddress(address, RenderWorker.DEFAULT_PORT)
+                    : new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+        }
+        return workers;
+    }
+}
@@ -0,0 +1,589 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    Formula is an iteration formula z -> f(z, c) given by the user (e.g. z^3 + c), which is parsed once into an expression tree and compiled into a
+    FormulaKernel, so that a new fractal does not need a hand written ComplexPlane class (see FormulaPlane).
+
+    The formulas are written with the complex variables z and c, the imaginary unit i, real numbers, the operators + - * / ^ (multiplication can be
+    implicit, e.g. 2z or 0.5i), parentheses, |x| for the modulus of x, and the functions re, im, abs, conj, exp, log, sin and cos (whose argument is
+    either in parentheses or a single variable or number, e.g. re z). Some formulas have names:
+      mandelbrot    z^2 + c
+      burningship   (|re z| + i|im z|)^2 + c
+      tricorn       conj(z)^2 + c
+      celtic        |re(z^2)| + i im(z^2) + c
+
+    The kernel is generated as the bytecode of a class which iterates the formula on primitive doubles (see KernelAssembler), so the JIT compiler
+    optimizes it like a hand written kernel, on any runtime (no Java compiler is needed):
+      - every operation of the tree becomes a few local double variables (the real and imaginary parts), the constants are folded and the parts which
+        are known to be 0 (e.g. the imaginary part of re z) are left out,
+      - integer powers (e.g. z^3) are expanded into multiplications by repeated squaring, the other powers use the polar form.
+    The kernels are cached by their source, so the same formula is only compiled once per JVM. z^2 + c compiles to exactly the arithmetic of the
+    MandelbrotSet kernel (without the interior checks). The formula can also be evaluated by an interpreter which walks the expression tree for every
+    iteration, which computes the same values much more slowly (see FractalBenchmark kernel.formula.*); it is used when the class cannot be defined.
+
+    The orbits escape when |z| > 10 like the other kernels, and the potential value is computed with the degree of the formula (3 for z^3 + c).
+*/
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class Formula {
+    // The largest integer power which is expanded into multiplications
+    private static final int MAX_POWER = 64;
+    // The formulas which have names
+    private static final Map<String, String> NAMED = Map.of("mandelbrot", "z^2 + c", "burningship", "(|re z| + i|im z|)^2 + c", "tricorn",
+            "conj(z)^2 + c", "celtic", "|re(z^2)| + i im(z^2) + c");
+    private static final List<String> FUNCTIONS = Arrays.asList("re", "im", "abs", "conj", "exp", "log", "sin", "cos");
+    // The compiled kernels by their source
+    private static final Map<String, FormulaKernel> compiled = new ConcurrentHashMap<>();
+
+    // The operations of the nodes of the expression tree
+    private static final int CONST = 0, Z = 1, C = 2, ADD = 3, SUB = 4, MUL = 5, DIV = 6, NEG = 7, POW = 8, CPOW = 9, FUNC = 10;
+
+    // A node of the expression tree. Its value is stored by the interpreter at registers[slot] (real part) and registers[slot + 1] (imaginary part)
+    private static class Node {
+        final int op, slot;
+        final Node a, b;
+        // The value of a constant, or the integer exponent of a power
+        final double re, im;
+        final int power;
+        final String function;
+        // Whether the value is known to be real
+        final boolean real;
+
+        Node(int op, int slot, Node a, Node b, double re, double im, int power, String function) {
+            this.op = op;
+            this.slot = slot;
+            this.a = a;
+            this.b = b;
+            this.re = re;
+            this.im = im;
+            this.power = power;
+            this.function = function;
+            this.real = op == CONST ? im == 0 : op == Z || op == C || op == CPOW ? false
+                    : op == FUNC ? function.equals("re") || function.equals("im") || function.equals("abs") || (!function.equals("log") && a.real)
+                    : a.real && (b == null || b.real);
+        }
+
+        // Method to evaluate the node (interpreter)
+        void eval(double[] r) {
+            if (op == CONST) {
+                r[slot] = this.re;
+                r[slot + 1] = this.im;
+                return;
+            }
+            if (op == Z || op == C)
+                return;
+            a.eval(r);
+            double ar = r[a.slot], ai = r[a.slot + 1], br = 0, bi = 0, re, im;
+            if (b != null) {
+                b.eval(r);
+                br = r[b.slot];
+                bi = r[b.slot + 1];
+            }
+            switch (op) {
+                case ADD:
+                    re = ar + br;
+                    im = ai + bi;
+                    break;
+                case SUB:
+                    re = ar - br;
+                    im = ai - bi;
+                    break;
+                case NEG:
+                    re = -ar;
+                    im = -ai;
+                    break;
+                case MUL:
+                    re = ar * br - ai * bi;
+                    im = ar * bi + ai * br;
+                    break;
+                case DIV: {
+                    double d = br * br + bi * bi;
+                    re = (ar * br + ai * bi) / d;
+                    im = (ai * br - ar * bi) / d;
+                    break;
+                }
+                case POW: {
+                    // Repeated squaring, in the same order as the compiled kernels
+                    double pr = 0, pi = 0;
+                    boolean first = true;
+                    for (int k = Math.abs(power);; k >>= 1) {
+                        if ((k & 1) != 0) {
+                            if (first) {
+                                pr = ar;
+                                pi = ai;
+                                first = false;
+                            } else {
+                                double t = pr * ar - pi * ai;
+                                pi = pr * ai + pi * ar;
+                                pr = t;
+                            }
+                        }
+                        if (k <= 1)
+                            break;
+                        double t = ar * ar - ai * ai;
+                        ai = 2 * ar * ai;
+                        ar = t;
+                    }
+                    if (power < 0) {
+                        double d = pr * pr + pi * pi;
+                        pr = pr / d;
+                        pi = -pi / d;
+                    }
+                    re = pr;
+                    im = pi;
+                    break;
+                }
+                case CPOW: {
+                    double lr = Math.log(Math.sqrt(ar * ar + ai * ai)), li = Math.atan2(ai, ar);
+                    // A real exponent leaves out its imaginary part like the compiled kernels (0 * log 0 would be NaN)
+                    double m = Math.exp(b.real ? br * lr : br * lr - bi * li), angle = b.real ? br * li : br * li + bi * lr;
+                    re = m * Math.cos(angle);
+                    im = m * Math.sin(angle);
+                    break;
+                }
+                default:
+                    switch (function) {
+                        case "re":
+                            re = ar;
+                            im = 0;
+                            break;
+                        case "im":
+                            re = ai;
+                            im = 0;
+                            break;
+                        case "abs":
+                            re = a.real ? Math.abs(ar) : Math.sqrt(ar * ar + ai * ai);
+                            im = 0;
+                            break;
+                        case "conj":
+                            re = ar;
+                            im = -ai;
+                            break;
+                        case "exp": {
+                            double m = Math.exp(ar);
+                            re = m * Math.cos(ai);
+                            im = m * Math.sin(ai);
+                            break;
+                        }
+                        case "log":
+                            re = Math.log(Math.sqrt(ar * ar + ai * ai));
+                            im = Math.atan2(ai, ar);
+                            break;
+                        case "sin":
+                            re = Math.sin(ar) * Math.cosh(ai);
+                            im = Math.cos(ar) * Math.sinh(ai);
+                            break;
+                        default:
+                            re = Math.cos(ar) * Math.cosh(ai);
+                            im = -(Math.sin(ar) * Math.sinh(ai));
+                            break;
+                    }
+            }
+            r[slot] = re;
+            r[slot + 1] = im;
+        }
+
+        // Method to get the degree of the node as a polynomial in z (used for the potential values)
+        double degree() {
+            switch (op) {
+                case CONST:
+                case C:
+                    return 0;
+                case Z:
+                    return 1;
+                case ADD:
+                case SUB:
+                    return Math.max(a.degree(), b.degree());
+                case MUL:
+                    return a.degree() + b.degree();
+                case DIV:
+                    return Math.max(0, a.degree() - b.degree());
+                case POW:
+                    return a.degree() * power;
+                case CPOW:
+                    return b.op == CONST ? a.degree() * b.re : a.degree();
+                default:
+                    return a.degree();
+            }
+        }
+    }
+
+    private final String text;
+    private final Node root;
+    // The number of registers of the interpreter: z and c are stored in the first four
+    private int slots = 4;
+    // The position of the parser and the number of |x| being parsed
+    private int pos, absDepth;
+
+    private Formula(String text) {
+        this.text = text;
+        Node root = parseExpression();
+        skipSpaces();
+        if (pos < text.length())
+            throw error("unexpected " + text.charAt(pos));
+        this.root = root;
+    }
+
+    // Method to parse a formula (or the name of a formula)
+    public static Formula parse(String formula) {
+        return new Formula(NAMED.getOrDefault(formula.trim().toLowerCase(Locale.ROOT), formula));
+    }
+
+    @Override
+    public String toString() {
+        return this.text;
+    }
+
+    // Method to get the degree of the formula in z, which the potential values are computed with
+    public double getDegree() {
+        double degree = root.degree();
+        return degree > 1 ? degree : 2;
+    }
+
+    // Method to get the kernel of the formula: the compiled kernel, or the interpreter if the formula cannot be compiled
+    public FormulaKernel kernel() {
+        try {
+            return compile();
+        } catch (IllegalStateException e) {
+            System.err.printf("Warning: %s, the formula %s is interpreted\n", e.getMessage(), text);
+            return interpret();
+        }
+    }
+
+    // Method to get the interpreter of the formula, which walks the expression tree for every iteration
+    public FormulaKernel interpret() {
+        Node root = this.root;
+        int slots = this.slots;
+        double logDegree = Math.log(getDegree());
+        // Every thread reuses its registers
+        ThreadLocal<double[]> registers = ThreadLocal.withInitial(() -> new double[slots]);
+        return (zr, zi, cr, ci, maxItr, smooth, index) -> {
+            double[] r = registers.get();
+            r[2] = cr;
+            r[3] = ci;
+            int count = 0;
+            double zr2 = zr * zr, zi2 = zi * zi;
+            while (count < maxItr && (zr2 + zi2 < 100)) {
+                r[0] = zr;
+                r[1] = zi;
+                root.eval(r);
+                zr = r[root.slot];
+                zi = r[root.slot + 1];
+                zr2 = zr * zr;
+                zi2 = zi * zi;
+                count++;
+            }
+            smooth[index] = Math.log(1.5 + count - Math.log(Math.log(Math.sqrt(zr2 + zi2))) / logDegree) / 3.4;
+            return count;
+        };
+    }
+
+    // Method to get the kernel compiled from the formula. Throws IllegalStateException if it cannot be compiled. The bytecode is generated outside of
+    // the cache, which only holds its lock while a new class is defined.
+    public FormulaKernel compile() {
+        KernelAssembler kernel = new KernelAssembler();
+        KernelAssembler.Expr[] value = emit(root, kernel);
+        kernel.finish(value[0], value[1], getDegree());
+        return compiled.computeIfAbsent(kernel.toString(), source -> kernel.define());
+    }
+
+    // Method to generate the statements which compute the value of a node into local variables. Returns the expressions of its real and imaginary
+    // parts, null for a part which is known to be 0.
+    private static KernelAssembler.Expr[] emit(Node node, KernelAssembler code) {
+        switch (node.op) {
+            case CONST:
+                return new KernelAssembler.Expr[] { node.re == 0 ? null : KernelAssembler.constant(node.re),
+                        node.im == 0 ? null : KernelAssembler.constant(node.im) };
+            case Z:
+                return new KernelAssembler.Expr[] { KernelAssembler.Z_REAL, KernelAssembler.Z_IMAGINARY };
+            case C:
+                return new KernelAssembler.Expr[] { KernelAssembler.C_REAL, KernelAssembler.C_IMAGINARY };
+            default:
+        }
+        KernelAssembler.Expr[] a = emit(node.a, code), b = node.b == null ? null : emit(node.b, code);
+        KernelAssembler.Expr re, im;
+        switch (node.op) {
+            case ADD:
+                re = add(a[0], b[0]);
+                im = add(a[1], b[1]);
+                break;
+            case SUB:
+                re = sub(a[0], b[0]);
+                im = sub(a[1], b[1]);
+                break;
+            case NEG:
+                re = sub(null, a[0]);
+                im = sub(null, a[1]);
+                break;
+            case MUL:
+                re = sub(mul(a[0], b[0]), mul(a[1], b[1]));
+                im = add(mul(a[0], b[1]), mul(a[1], b[0]));
+                break;
+            case DIV: {
+                KernelAssembler.Expr d = code.temp(add(mul(b[0], b[0]), mul(b[1], b[1])));
+                re = div(add(mul(a[0], b[0]), mul(a[1], b[1])), d);
+                im = div(sub(mul(a[1], b[0]), mul(a[0], b[1])), d);
+                break;
+            }
+            case POW: {
+                // Repeated squaring
+                KernelAssembler.Expr pr = null, pi = null, ar = a[0], ai = a[1];
+                boolean first = true;
+                for (int k = Math.abs(node.power);; k >>= 1) {
+                    if ((k & 1) != 0) {
+                        if (first) {
+                            pr = ar;
+                            pi = ai;
+                            first = false;
+                        } else {
+                            KernelAssembler.Expr t = code.temp(sub(mul(pr, ar), mul(pi, ai)));
+                            pi = code.temp(add(mul(pr, ai), mul(pi, ar)));
+                            pr = t;
+                        }
+                    }
+                    if (k <= 1)
+                        break;
+                    KernelAssembler.Expr t = code.temp(sub(mul(ar, ar), mul(ai, ai)));
+                    ai = code.temp(mul(mul(KernelAssembler.constant(2), ar), ai));
+                    ar = t;
+                }
+                if (node.power < 0) {
+                    KernelAssembler.Expr d = code.temp(add(mul(pr, pr), mul(pi, pi)));
+                    pr = div(pr, d);
+                    pi = div(sub(null, pi), d);
+                }
+                re = pr;
+                im = pi;
+                break;
+            }
+            case CPOW: {
+                KernelAssembler.Expr lr = code.temp(call("log", call("sqrt", orZero(add(mul(a[0], a[0]), mul(a[1], a[1]))))));
+                KernelAssembler.Expr li = code.temp(call("atan2", orZero(a[1]), orZero(a[0])));
+                KernelAssembler.Expr m = code.temp(call("exp", orZero(sub(mul(b[0], lr), mul(b[1], li)))));
+                KernelAssembler.Expr angle = code.temp(orZero(add(mul(b[0], li), mul(b[1], lr))));
+                re = mul(m, call("cos", angle));
+                im = mul(m, call("sin", angle));
+                break;
+            }
+            default:
+                switch (node.function) {
+                    case "re":
+                        re = a[0];
+                        im = null;
+                        break;
+                    case "im":
+                        re = a[1];
+                        im = null;
+                        break;
+                    case "abs":
+                        re = node.a.real ? call("abs", orZero(a[0])) : call("sqrt", orZero(add(mul(a[0], a[0]), mul(a[1], a[1]))));
+                        im = null;
+                        break;
+                    case "conj":
+                        re = a[0];
+                        im = sub(null, a[1]);
+                        break;
+                    case "exp": {
+                        KernelAssembler.Expr m = code.temp(call("exp", orZero(a[0])));
+                        re = a[1] == null ? m : mul(m, call("cos", a[1]));
+                        im = a[1] == null ? null : mul(m, call("sin", a[1]));
+                        break;
+                    }
+                    case "log":
+                        re = call("log", call("sqrt", orZero(add(mul(a[0], a[0]), mul(a[1], a[1])))));
+                        im = call("atan2", orZero(a[1]), orZero(a[0]));
+                        break;
+                    case "sin":
+                        re = a[1] == null ? call("sin", orZero(a[0])) : mul(call("sin", orZero(a[0])), call("cosh", a[1]));
+                        im = a[1] == null ? null : mul(call("cos", orZero(a[0])), call("sinh", a[1]));
+                        break;
+                    default:
+                        re = a[1] == null ? call("cos", orZero(a[0])) : mul(call("cos", orZero(a[0])), call("cosh", a[1]));
+                        im = a[1] == null ? null : KernelAssembler.negate(mul(call("sin", orZero(a[0])), call("sinh", a[1])));
+                        break;
+                }
+        }
+        return new KernelAssembler.Expr[] { code.temp(re), code.temp(im) };
+    }
+
+    // Methods to build the expressions of the parts of the values, where null stands for 0
+    private static KernelAssembler.Expr add(KernelAssembler.Expr x, KernelAssembler.Expr y) {
+        return x == null ? y : y == null ? x : KernelAssembler.binary('+', x, y);
+    }
+
+    private static KernelAssembler.Expr sub(KernelAssembler.Expr x, KernelAssembler.Expr y) {
+        return y == null ? x : x == null ? KernelAssembler.negate(y) : KernelAssembler.binary('-', x, y);
+    }
+
+    private static KernelAssembler.Expr mul(KernelAssembler.Expr x, KernelAssembler.Expr y) {
+        return x == null || y == null ? null : KernelAssembler.binary('*', x, y);
+    }
+
+    private static KernelAssembler.Expr div(KernelAssembler.Expr x, KernelAssembler.Expr y) {
+        return x == null ? null : KernelAssembler.binary('/', x, y);
+    }
+
+    private static KernelAssembler.Expr call(String method, KernelAssembler.Expr... arguments) {
+        return KernelAssembler.call(method, arguments);
+    }
+
+    private static KernelAssembler.Expr orZero(KernelAssembler.Expr x) {
+        return x == null ? KernelAssembler.constant(0) : x;
+    }
+
+    // Methods of the recursive descent parser, one per level of precedence: expression := term (('+' | '-') term)*
+    private Node parseExpression() {
+        Node node = parseTerm();
+        for (skipSpaces(); pos < text.length(); skipSpaces()) {
+            char operator = text.charAt(pos);
+            if (operator != '+' && operator != '-')
+                break;
+            pos++;
+            node = node(operator == '+' ? ADD : SUB, node, parseTerm());
+        }
+        return node;
+    }
+
+    // term := unary (('*' | '/') unary | power)*, where a power which follows directly is multiplied (e.g. 2z)
+    private Node parseTerm() {
+        Node node = parseUnary();
+        for (skipSpaces(); pos < text.length(); skipSpaces()) {
+            char operator = text.charAt(pos);
+            if (operator == '*' || operator == '/') {
+                pos++;
+                node = node(operator == '*' ? MUL : DIV, node, parseUnary());
+            } else if (Character.isLetterOrDigit(operator) || operator == '.' || operator == '(' || (operator == '|' && absDepth == 0))
+                node = node(MUL, node, parsePower());
+            else
+                break;
+        }
+        return node;
+    }
+
+    // unary := ('-' | '+') unary | power
+    private Node parseUnary() {
+        skipSpaces();
+        if (pos < text.length() && (text.charAt(pos) == '-' || text.charAt(pos) == '+'))
+            return text.charAt(pos++) == '-' ? node(NEG, parseUnary(), null) : parseUnary();
+        return parsePower();
+    }
+
+    // power := primary ('^' unary)?
+    private Node parsePower() {
+        Node base = parsePrimary();
+        skipSpaces();
+        if (pos == text.length() || text.charAt(pos) != '^')
+            return base;
+        pos++;
+        Node exponent = parseUnary();
+        if (exponent.op == CONST && exponent.im == 0 && exponent.re == Math.rint(exponent.re) && Math.abs(exponent.re) <= MAX_POWER) {
+            int power = (int) exponent.re;
+            if (power == 0)
+                return constant(1, 0);
+            return power == 1 ? base : fold(new Node(POW, newSlot(), base, null, 0, 0, power, null));
+        }
+        return node(CPOW, base, exponent);
+    }
+
+    // primary := number | z | c | i | function primary | '(' expression ')' | '|' expression '|'
+    private Node parsePrimary() {
+        skipSpaces();
+        if (pos == text.length())
+            throw error("missing operand");
+        char first = text.charAt(pos);
+        if (Character.isDigit(first) || first == '.') {
+            int start = pos;
+            while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.'))
+                pos++;
+            // An exponent (e.g. 1e-3) unless the e starts a name
+            if (pos + 1 < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                int end = pos + 1 + (text.charAt(pos + 1) == '-' || text.charAt(pos + 1) == '+' ? 1 : 0);
+                if (end < text.length() && Character.isDigit(text.charAt(end))) {
+                    pos = end;
+                    while (pos < text.length() && Character.isDigit(text.charAt(pos)))
+                        pos++;
+                }
+            }
+            try {
+                return constant(Double.parseDouble(text.substring(start, pos)), 0);
+            } catch (NumberFormatException e) {
+                throw error("invalid number " + text.substring(start, pos));
+            }
+        }
+        if (Character.isLetter(first)) {
+            int start = pos;
+            while (pos < text.length() && Character.isLetter(text.charAt(pos)))
+                pos++;
+            String name = text.substring(start, pos).toLowerCase(Locale.ROOT);
+            if (name.equals("z"))
+                return new Node(Z, 0, null, null, 0, 0, 0, null);
+            if (name.equals("c"))
+                return new Node(C, 2, null, null, 0, 0, 0, null);
+            if (name.equals("i"))
+                return constant(0, 1);
+            if (!FUNCTIONS.contains(name)) {
+                pos = start;
+                throw error("unknown name " + name);
+            }
+            return fold(new Node(FUNC, newSlot(), parsePrimary(), null, 0, 0, 0, name));
+        }
+        pos++;
+        if (first == '(') {
+            Node node = parseExpression();
+            expect(')');
+            return node;
+        }
+        if (first == '|') {
+            absDepth++;
+            Node node = parseExpression();
+            expect('|');
+            absDepth--;
+            return fold(new Node(FUNC, newSlot(), node, null, 0, 0, 0, "abs"));
+        }
+        pos--;
+        throw error("unexpected " + first);
+    }
+
+    private void expect(char c) {
+        skipSpaces();
+        if (pos == text.length() || text.charAt(pos) != c)
+            throw error("missing " + c);
+        pos++;
+    }
+
+    private void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+            pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(String.format("Invalid formula %s: %s at position %d", text, message, pos + 1));
+    }
+
+    private int newSlot() {
+        slots += 2;
+        return slots - 2;
+    }
+
+    private Node constant(double re, double im) {
+        return new Node(CONST, newSlot(), null, null, re, im, 0, null);
+    }
+
+    private Node node(int op, Node a, Node b) {
+        return fold(new Node(op, newSlot(), a, b, 0, 0, 0, null));
+    }
+
+    // Method to replace a node whose operands are all constants by its value
+    private Node fold(Node node) {
+        if (node.a.op != CONST || (node.b != null && node.b.op != CONST))
+            return node;
+        double[] r = new double[slots];
+        node.eval(r);
+        return constant(r[node.slot], r[node.slot + 1]);
+    }
+}
@@ -0,0 +1,12 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    FormulaKernel is the iteration kernel of a user supplied formula (see Formula): either a class generated at runtime from the formula (see
+    KernelAssembler), or the interpreter of its expression tree when the class cannot be generated.
+*/
+
+public interface FormulaKernel {
+    // Method to iterate z = zr + i * zi with the constant c = cr + i * ci until it escapes or reaches maxItr. Returns the number of iterations and
+    // stores the potential value into smooth[index].
+    int iterate(double zr, double zi, double cr, double ci, int maxItr, double[] smooth, int index);
+}
@@ -0,0 +1,85 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    Derived class from ComplexPlane which makes the fractal of a user supplied formula (see Formula), iterated by the kernel compiled from it.
+
+    Without a constant, z starts from 0 and c is the complex number of the pixel (like the Mandelbrot set). With a constant (setConstant), z starts from
+    the complex number of the pixel and c is the constant (like a Julia set).
+
+    The kernel is only compiled when the plane is first rendered (see prepare) or iterated, so the planes which are never iterated (e.g. the one read
+    from an iteration dump to recolour it) do not pay for the compilation. It is resolved once, under the lock of the plane, so the threads of a render
+    never compile it (or print the warning of the interpreter) at the same time.
+
+    The interior checks are ignored, since the cardioid and bulb tests only hold for z^2 + c and the formula may not be analytic (e.g. the Burning Ship).
+*/
+
+public class FormulaPlane extends ComplexPlane {
+    private final Formula formula;
+    // The kernel, or null until it is needed
+    private volatile FormulaKernel kernel;
+    private Complex constant = null;
+
+    public FormulaPlane(String formula) {
+        this(Formula.parse(formula));
+    }
+
+    public FormulaPlane(Formula formula) {
+        this(formula, null);
+    }
+
+    // A plane which iterates the formula with the given kernel (e.g. its interpreter), or with the compiled kernel if it is null
+    public FormulaPlane(Formula formula, FormulaKernel kernel) {
+        super(-2d, 2d, -2d, 2d);
+        this.formula = formula;
+        this.kernel = kernel;
+    }
+
+    public Formula getFormula() {
+        return this.formula;
+    }
+
+    // Method to iterate the formula like a Julia set with the given constant
+    public void setConstant(double real, double imaginary) {
+        this.constant = new Complex(real, imaginary);
+    }
+
+    // Method to get the constant, or null if c is the complex number of the pixel
+    public Complex getConstant() {
+        return this.constant;
+    }
+
+    // The formula and the constant are part of the fractal
+    @Override
+    public String getMappingKey(int maxItr) {
+        return constant == null ? String.format("%s/%s", super.getMappingKey(maxItr), formula)
+                : String.format("%s/%s/%a/%a", super.getMappingKey(maxItr), formula, constant.getReal(), constant.getImaginary());
+    }
+
+    // Method to get the kernel, compiling it if it has not been resolved yet
+    private FormulaKernel kernel() {
+        FormulaKernel kernel = this.kernel;
+        if (kernel == null) {
+            synchronized (this) {
+                kernel = this.kernel;
+                if (kernel == null)
+                    this.kernel = kernel = formula.kernel();
+            }
+        }
+        return kernel;
+    }
+
+    // The kernel is resolved before the tasks of the render start
+    @Override
+    public void prepare() {
+        kernel();
+    }
+
+    @Override
+    public int countIterations(double real, double imaginary, double[] smooth, int index) {
+        FormulaKernel kernel = kernel();
+        Complex constant = this.constant;
+        if (constant == null)
+            return kernel.iterate(0d, 0d, real, imaginary, maxItr, smooth, index);
+        return kernel.iterate(real, imaginary, constant.getReal(), constant.getImaginary(), maxItr, smooth, index);
+    }
+}
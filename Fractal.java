@@ -12,15 +12,44 @@
  * @see JuliaSet.java
  * @see IterationCounter.java
  * @see Complex.java
+ * @see FractalRenderer.java
+ * @see ColorScheme.java
+ * @see BatchRenderer.java
+ * @see RenderJob.java
+ * @see AnimationRenderer.java
+ * @see DistributedRenderer.java
+ * @see RenderWorker.java
+ * @see TileServer.java
+ * @see TileLoadGenerator.java
+ * @see IterationDump.java
+ * @see Recolorer.java
+ * @see Formula.java
+ * @see FormulaKernel.java
+ * @see KernelAssembler.java
+ * @see FormulaPlane.java
+ * @see SymmetricRenderer.java
+ * @see Buddhabrot.java
+ * @see BuddhabrotRenderer.java
  * 
  * Usage:
  * java Fractal Mandelbrot min(real) max(real) min(imaginary) max(imaginary) to print the Mandelbrot set in the specified range
  * java Fractal Julia C_real C_imaginary to print the Julia set in the range of ((-1, 1), (-1, 1))
+ * java Fractal render ... to render the fractals into image files without the GUI
+ * java Fractal recolor ... to colour the values saved by java Fractal render --dump into an image without computing them again
+ * java Fractal animate ... to render numbered frames of a Julia set constant sweep or a Mandelbrot set zoom
+ * java Fractal buddhabrot ... to render the orbit density of the Mandelbrot set (the Buddhabrot or the Nebulabrot)
+ * java Fractal worker ... to compute the tiles of the distributed renders of other machines
+ * java Fractal serve ... to serve the fractals as slippy map tiles over HTTP (and java Fractal loadtest ... to measure its latency)
+ * 
+ * @see BatchRenderer.java for the usage of the headless render mode
+ * @see AnimationRenderer.java for the usage of the animation mode
+ * @see BuddhabrotRenderer.java for the usage of the orbit density mode
  */
 
 import java.awt.Cursor;
 import java.awt.event.*;
 import java.io.IOException;
+import java.util.Arrays;
 
 import javax.swing.JFrame;
 import javax.swing.JLayeredPane;
@@ -46,7 +75,14 @@ public class Fractal {
     private static void printUsage(String errMessage) {
         System.out.printf("\u001B[31mError: %s.\033[0m\n", errMessage);
         System.out.println("Usage: java Fractal Mandelbrot [REALMIN REALMAX IMAGMIN IMAGMAX] [MAXITR]");
-        System.out.println("   or: java Fractal Julia [C_REAL C_IMAG] [MAXITR]\n");
+        System.out.println("   or: java Fractal Julia [C_REAL C_IMAG] [MAXITR]");
+        System.out.println("   or: java Fractal render [OPTIONS] (Mandelbrot|Julia|Formula FORMULA) [...] | --jobs JOBFILE");
+        System.out.println("   or: java Fractal recolor [--color smooth|gradient] [--output FILE] DUMP");
+        System.out.println("   or: java Fractal animate [OPTIONS] (Mandelbrot|Julia) KEYFRAMES... [MAXITR]");
+        System.out.println("   or: java Fractal buddhabrot [OPTIONS] [REALMIN REALMAX IMAGMIN IMAGMAX]");
+        System.out.println("   or: java Fractal worker [--port PORT] [--parallelism N]");
+        System.out.println("   or: java Fractal serve [--port PORT] [--max-renders N] [--maxitr N] [--max-maxitr N]");
+        System.out.println("   or: java Fractal loadtest [--clients N] [--requests N] [--max-zoom Z] URL\n");
         System.out.println(
                 "The first argument must be the type of the fractal (either the Mandelbrot set or the Filled Julia set) to be drawn and is required.\n");
         System.out.println(
@@ -66,6 +102,46 @@ public class Fractal {
             System.exit(0);
         }
 
+        // Render the fractals into image files without the GUI
+        if (args[0].equals("render")) {
+            BatchRenderer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // Colour the values of an iteration dump into an image file
+        if (args[0].equals("recolor")) {
+            Recolorer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // Compute the tiles of distributed renders
+        if (args[0].equals("worker")) {
+            RenderWorker.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // Serve the fractals as map tiles over HTTP
+        if (args[0].equals("serve")) {
+            TileServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args[0].equals("loadtest")) {
+            TileLoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // Render numbered frames of an animation without the GUI
+        if (args[0].equals("animate")) {
+            AnimationRenderer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // Render the orbit density of the Mandelbrot set
+        if (args[0].equals("buddhabrot")) {
+            BuddhabrotRenderer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         // Create a new instance of the ComplexPlane (either MandelbrotSet or Juliaset)
         // Initially an instance of MandelbrotSet is assigned but may be changed
         // depending on the user requested type of the fractal
@@ -94,11 +170,7 @@ public class Fractal {
         // Create an instance of the JPanel object: FractalDraw
         FractalDraw fDraw = new FractalDraw(fractalPlane);
 
-        try {
-            fDraw.init(); // Call the init method of the JPanel object to start the relevant threads for the pre-computation
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        fDraw.init(); // Call the init method of the JPanel object to start the progressive render on a background thread
 
         // Call showAxes method of the FractalDraw object to make the real and imaginary
         // axes visible
@@ -113,14 +185,14 @@ public class Fractal {
 
         // Create a new instance of the posLabel JComponent which shows the complex
         // number pointed by the cursor
-        PositionLabel posLabel = new PositionLabel();
+        PositionLabel posLabel = new PositionLabel(fractalPlane);
         // Add the posLabel object to the layered pane of the root pane of frame object
         frame.getRootPane().getLayeredPane().add(posLabel, JLayeredPane.DRAG_LAYER);
         // Set the boundaries of the posLabel object within the frame object
         posLabel.setBounds(0, 0, frame.getWidth(), frame.getHeight());
 
-        // Add an event listener to the frame object to trigger the cursor motion
-        frame.addMouseMotionListener(new MouseMotionAdapter() {
+        // Add an event listener to the canvas to trigger the cursor motion (the canvas also handles the zooming and panning)
+        fDraw.addMouseMotionListener(new MouseMotionAdapter() {
             public void mouseMoved(MouseEvent e) {
                 posLabel.setX(e.getX());
                 posLabel.setY(e.getY());
@@ -3,174 +3,326 @@
 
     FractalDraw is the base class for painting inside the GUI.
 
-    The number of iterations for each complex number corresponding to each pixel is calculated prior to the painting. The calculation is divided into batches of
-    SEG_SIZE and handled to some Threads to compute them parallely. The computed iteration counts are stored in the iterationsCount array.
+    The number of iterations for each complex number corresponding to each pixel is calculated by the FractalRenderer class on a background thread, which
+    stores the computed iteration counts in the RenderContext object of the panel. The canvas is rendered progressively: the first pass computes 1/16 of
+    the pixels and each following pass refines it, reusing the pixels already computed. Every pass is coloured into a new BufferedImage (each pixel takes
+    the colour of the nearest computed pixel above and to the left of it) which is then published to the panel with repaint, so the event dispatch thread
+    never waits for the calculation.
+
+    The view can be changed with the mouse: the wheel zooms in and out around the cursor, dragging with the left button selects a rectangle to zoom into
+    and dragging with the right (or middle) button pans the view. The views are rendered one at a time on a single background thread, and a new view
+    cancels the render of the previous one right away. When the view is only panned after a finished render, the buffers are shifted and only the strips
+    exposed by the translation are computed.
 
     An object of the ComplexPlane is used as a member of the FractalDraw class so that the relevant derived class object of the ComplexPlane (MandelbrotSet or JuliaSet) 
     can be set explicitly and the FractalDraw class can communicate directly with the ComplexPlane object to set or get its attributes.
 
-    There are two colouring schemes used to colour the fractals:
-    (01). Smooth Colouring scheme (which is very similar to the coloring scheme used in the Mandelbrot set picture on Wikipedia)
-    (02). Gradient Colouring scheme (Gradient colour bands with smooth edges)
+    The pixels are coloured using one of the colouring schemes in the ColorScheme class, straight into the raster of the BufferedImage. Pressing C
+    switches between the colouring schemes and colours the current view again without computing its iterations again.
+
+    Pressing + doubles maxItr. The orbits which had not escaped at the end of the last render are kept (see OrbitStore), so when nothing else has
+    changed only those orbits are continued, from the iteration they had reached, instead of rendering the whole view again.
+
+    Pressing D saves the computed values of the current view into an iteration dump (see IterationDump), which java Fractal recolor colours into an
+    image with any colouring scheme without computing it again.
 */
 
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import javax.imageio.ImageIO;
+import javax.swing.AbstractAction;
 import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FractalDraw extends JPanel {
     private static final long serialVersionUID = 1L;
     // Width and Height of the canvas
     private static final int WIDTH = 800, HEIGHT = 800;
-    // The size of the pixel area segment that one thread handles
-    public static final int SEG_SIZE = 100;
-
-    // Used to store 16 points of a gradient which is used by the getColor2 method
-    private Color[] gradientMap = new Color[16];
-    // Array of threads which is used to pre-compute the iterationsCount array
-    private Thread[] iterationCounters = new Thread[WIDTH * HEIGHT / (SEG_SIZE * SEG_SIZE)];
-    // ready is set to true when all the iterationCounters Threads have been
-    // completed
+    // The step of the first pass of the progressive render (1/16 of the pixels)
+    private static final int COARSEST_STEP = 4;
+    // The factor by which one step of the mouse wheel zooms out
+    private static final double WHEEL_ZOOM = 1.25;
     // The boolean variable show is used whether or not to paint the cartesian axes
-    // The saveImage flag is used to write the BufferedImage into a file only once
-    private boolean ready = false, show = false, saveImage = true;
-
-    // To store the number of iterations taken by each complex number corresponding
-    // to each pixel on the canvas
-    public static int[][] iterationsCount = new int[WIDTH][HEIGHT];
-    // To store the potential values which is computed to generate smooth spectrums
-    // of colors
-    /**
-     * @see MandelbrotSet#countIterations(int, int) or
-     * @see JuliaSet#countIterations(int, int) for more details.
-     */
-    public static double[][] smoothColors = new double[WIDTH][HEIGHT];
-    // ComplexPlane object which is used to generate both MandelbrotSet and JuliaSet
-    public static ComplexPlane compPlane;
-    // The BufferedImage which the fracts plot get painted into
-    private BufferedImage bufImage;
-
-    // Smooth coloring scheme
-    private Color getColor1(int x, int y) {
-        if (iterationsCount[x][y] < compPlane.getMaxIterations()) {
-            double red = 0, green = 0, blue = 0;
-            if (smoothColors[x][y] < 1.0) {
-                red = Math.pow(smoothColors[x][y], 4);
-                green = Math.pow(smoothColors[x][y], 2.5);
-                blue = smoothColors[x][y];
-            } else {
-                smoothColors[x][y] = Math.max(0, 2 - smoothColors[x][y]);
-                red = smoothColors[x][y];
-                green = Math.pow(smoothColors[x][y], 1.5);
-                blue = Math.pow(smoothColors[x][y], 3);
-            }
-            return new Color((float) red, (float) green, (float) blue, 1.0f);
-        }
-        return Color.BLACK;
-    }
+    // The saveImage flag is used to write the first finished render into a file only once
+    private boolean show = false, saveImage = true;
 
-    // Gradient coloring scheme with anit-aliased (kind of) edges
-    private Color getColor2(int x, int y) {
-        if (iterationsCount[x][y] < compPlane.getMaxIterations()) {
-            Color c = gradientMap[iterationsCount[x][y] % 16];
-            if (x > 0 && y > 0) {
-                // Color of the pixel left to the current pixel
-                Color c1 = gradientMap[iterationsCount[x - 1][y] % 16];
-                // Color of the pixel above the current pixel
-                Color c2 = gradientMap[iterationsCount[x][y - 1] % 16];
-                Color avg = new Color((c1.getRed() + c.getRed()) / 2, (c1.getGreen() + c.getGreen()) / 2,
-                        (c1.getBlue() + c.getBlue()) / 2, 255);
-                return new Color((c2.getRed() + avg.getRed()) / 2, (c2.getGreen() + avg.getGreen()) / 2,
-                        (c2.getBlue() + avg.getBlue()) / 2, 255);
-            }
-            if (x > 0) {
-                // Color of the pixel left to the current pixel
-                Color c1 = gradientMap[iterationsCount[x - 1][y] % 16];
-                return new Color((c1.getRed() + c.getRed()) / 2, (c1.getGreen() + c.getGreen()) / 2,
-                        (c1.getBlue() + c.getBlue()) / 2, 255);
-            }
-            if (y > 0) {
-                // Color of the pixel above the current pixel
-                Color c1 = gradientMap[iterationsCount[x][y - 1] % 16];
-                return new Color((c1.getRed() + c.getRed()) / 2, (c1.getGreen() + c.getGreen()) / 2,
-                        (c1.getBlue() + c.getBlue()) / 2, 255);
-            }
-            return c;
-        }
-        return Color.BLACK;
-    }
+    // ComplexPlane object which is used to generate both MandelbrotSet and JuliaSet
+    private ComplexPlane compPlane;
+    // The frame buffer which holds the pre-computed values of the canvas
+    private RenderContext context;
+    // The BufferedImage of the latest finished pass, which is painted into the panel (null until the first pass is done)
+    private volatile BufferedImage bufImage;
+    // The thread which renders the requested views one at a time
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "fractal-render");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Guarded by this: whether a new view has been requested since the last render started, whether the buffers hold the view of the ComplexPlane
+    // object (i.e. the last render finished) and whether the current render only computes the strips exposed by a translation
+    private boolean dirty, valid, panning;
+    // Guarded by this: the maxItr of the view held by the buffers when they are valid
+    private int validMaxItr;
+    // Guarded by this: the translation requested since the last render started, which is applied to the ComplexPlane object by the next render
+    private int shiftX, shiftY;
+    // Guarded by this: the number of times maxItr has been doubled since the last render started
+    private int deepen;
+    // Guarded by this: the zooms requested since the last render started, in order, each {dx, dy, x0, y0, x1, y1}: the translation requested before it
+    // and the rectangle to zoom into
+    private final List<double[]> zooms = new ArrayList<>();
+    // The rectangle selected by dragging the left mouse button (only used by the event dispatch thread)
+    private Rectangle selection;
+    // The colouring scheme of the panel
+    private volatile int colorScheme = ColorScheme.SMOOTH;
 
     // Default constructor for a FractalDraw object
     public FractalDraw() {
         // Set the default size of the canvas
         setPreferredSize(new Dimension(WIDTH, HEIGHT));
-        // Initialize the gradient points
-        gradientMap[0] = new Color(66, 30, 15);
-        gradientMap[1] = new Color(25, 7, 26);
-        gradientMap[2] = new Color(9, 1, 47);
-        gradientMap[3] = new Color(4, 4, 73);
-        gradientMap[4] = new Color(0, 7, 100);
-        gradientMap[5] = new Color(12, 44, 138);
-        gradientMap[6] = new Color(24, 82, 177);
-        gradientMap[7] = new Color(57, 125, 209);
-        gradientMap[8] = new Color(134, 181, 229);
-        gradientMap[9] = new Color(211, 236, 248);
-        gradientMap[10] = new Color(241, 233, 191);
-        gradientMap[11] = new Color(248, 201, 95);
-        gradientMap[12] = new Color(255, 170, 0);
-        gradientMap[13] = new Color(204, 128, 0);
-        gradientMap[14] = new Color(153, 87, 0);
-        gradientMap[15] = new Color(106, 52, 3);
-        bufImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
     }
 
     public FractalDraw(ComplexPlane _compPlane) {
         this();
         compPlane = _compPlane;
+        context = new RenderContext(compPlane, WIDTH, HEIGHT);
+        context.setResumable(true);
+
+        MouseAdapter mouse = new MouseAdapter() {
+            // The position where the mouse button was pressed and the last position while panning
+            private int pressX, pressY, lastX, lastY;
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                pressX = lastX = e.getX();
+                pressY = lastY = e.getY();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (SwingUtilities.isLeftMouseButton(e)) {
+                    selection = new Rectangle(Math.min(pressX, e.getX()), Math.min(pressY, e.getY()), Math.abs(e.getX() - pressX),
+                            Math.abs(e.getY() - pressY));
+                    repaint();
+                } else {
+                    pan(e.getX() - lastX, e.getY() - lastY);
+                    lastX = e.getX();
+                    lastY = e.getY();
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (selection == null)
+                    return;
+                // Ignore the clicks and the rectangles too small to be selected on purpose
+                if (selection.width >= 4 && selection.height >= 4)
+                    zoom(selection.x, selection.y, selection.x + selection.width, selection.y + selection.height);
+                selection = null;
+                repaint();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                // Zoom around the cursor, so the complex number under the cursor stays where it is
+                double factor = Math.pow(WHEEL_ZOOM, e.getPreciseWheelRotation()), x = e.getX(), y = e.getY();
+                zoom(x - x * factor, y - y * factor, x + (WIDTH - x) * factor, y + (HEIGHT - y) * factor);
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+
+        // Switch the colouring scheme with the C key
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('c'), "switchColorScheme");
+        getActionMap().put("switchColorScheme", new AbstractAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setColorScheme(colorScheme == ColorScheme.SMOOTH ? ColorScheme.GRADIENT : ColorScheme.SMOOTH);
+            }
+        });
+
+        // Save the values of the view with the D key
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('d'), "saveDump");
+        getActionMap().put("saveDump", new AbstractAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveDump();
+            }
+        });
+
+        // Double maxItr with the + (or =) key
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('+'), "doubleMaxIterations");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('='), "doubleMaxIterations");
+        getActionMap().put("doubleMaxIterations", new AbstractAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                doubleMaxIterations();
+            }
+        });
     }
 
-    // Method used to start the threads in the iterationCounters array
-    public void init() throws InterruptedException {
-        long start = System.currentTimeMillis();
-        for (int x = 0; x < WIDTH; x += SEG_SIZE)
-            for (int y = 0; y < HEIGHT; y += SEG_SIZE) {
-                // (x, y) is flattened into 1D using the formula: (WIDTH / SEG_SIZE) * x /
-                // SEG_SIZE + y / SEG_SIZE
-                iterationCounters[(WIDTH / SEG_SIZE) * x / SEG_SIZE + y / SEG_SIZE] = new Thread(
-                        new IterationCounter(x, y));
-                iterationCounters[(WIDTH / SEG_SIZE) * x / SEG_SIZE + y / SEG_SIZE].start();
+    // Method to save the computed values of the current view into an iteration dump (on the background thread, after the render in progress if any)
+    public void saveDump() {
+        renderer.execute(() -> {
+            synchronized (this) {
+                // The buffers do not hold a finished view
+                if (!valid)
+                    return;
             }
-        // Synchronization: Wait until all the threads get completed
-        for (int i = 0; i < iterationCounters.length; i++)
-            iterationCounters[i].join();
-        long end = System.currentTimeMillis();
-        System.out.printf("The pre-calculation took %dms to execute\n", end - start);
-        // Pre-computation is ready
-        ready = true;
+            String filename = (compPlane instanceof JuliaSet ? "julia" : "mandelbrot") + ".fdump";
+            try {
+                IterationDump.write(context, Paths.get(filename), true);
+                System.out.println("The values of the view were saved into " + filename);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
     }
 
-    // Method to switch the axes on
-    public void showAxes() {
-        this.show = true;
+    // Method to double maxItr and render the view again, continuing only the orbits which had not escaped if the view has not changed otherwise
+    public void doubleMaxIterations() {
+        requestView(() -> deepen++);
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics G = bufImage.getGraphics();
-        // Wait until all the threads complete
-        while (!ready);
-        // Paint each pixel to a BufferedImage using the pre-computed values
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < HEIGHT; y++) {
-                G.setColor(getColor1(x, y));
-                G.fillRect(x, y, 1, 1);
+    // Method to change the colouring scheme and colour the current view again (on the background thread, after the render in progress if any)
+    public void setColorScheme(int scheme) {
+        colorScheme = scheme;
+        renderer.execute(() -> {
+            synchronized (this) {
+                // An unfinished view is coloured with the new scheme by its render
+                if (!valid)
+                    return;
+            }
+            System.out.printf("Coloured again in %dms\n", publish(1));
+        });
+    }
+
+    // Method used to start computing the iteration counts of the ComplexPlane object on a background thread
+    public void init() {
+        requestView(() -> {});
+    }
+
+    // Method to translate the view so that its contents move by (dx, dy) pixels. The strips being computed for an earlier translation are cheap, so
+    // they are finished instead of being cancelled.
+    public void pan(int dx, int dy) {
+        synchronized (this) {
+            shiftX += dx;
+            shiftY += dy;
+            if (!panning)
+                context.cancel();
+        }
+        requestView(() -> {});
+    }
+
+    // Method to zoom into the rectangle (x0, y0) - (x1, y1) of the canvas (which can be larger than the canvas to zoom out)
+    public void zoom(double x0, double y0, double x1, double y1) {
+        requestView(() -> {
+            // The pending translation comes first, as the rectangle is on the canvas the user sees
+            zooms.add(new double[] { shiftX, shiftY, x0, y0, x1, y1 });
+            shiftX = shiftY = 0;
+            valid = false;
+            context.cancel();
+        });
+    }
+
+    // Method to change the view and render the new one on the background thread
+    private void requestView(Runnable change) {
+        synchronized (this) {
+            change.run();
+            dirty = true;
+        }
+        renderer.execute(this::update);
+    }
+
+    // Method to render the latest requested view (runs on the background thread)
+    private void update() {
+        int dx, dy;
+        boolean reuse, resume;
+        synchronized (this) {
+            // The view has already been rendered by an earlier call
+            if (!dirty)
+                return;
+            dirty = false;
+            dx = shiftX;
+            dy = shiftY;
+            shiftX = shiftY = 0;
+            if (deepen > 0) {
+                compPlane.setMaxIterations((int) Math.min((long) compPlane.getMaxIterations() << Math.min(deepen, 31), Integer.MAX_VALUE));
+                deepen = 0;
             }
+            // Only maxItr has changed since the last finished render, so its unescaped orbits can be continued
+            resume = valid && dx == 0 && dy == 0 && context.getOrbits().canResume(context);
+            // The pixels computed with another maxItr cannot be shifted into the view (their interior pixels would be coloured as escaped)
+            reuse = !resume && valid && validMaxItr == compPlane.getMaxIterations() && Math.abs(dx) < WIDTH && Math.abs(dy) < HEIGHT;
+            valid = false;
+            panning = reuse;
+            context.setCancelled(false);
+            // No render is running, so the ComplexPlane object can be zoomed and translated
+            for (double[] zoom : zooms) {
+                compPlane.translate((int) zoom[0], (int) zoom[1]);
+                compPlane.setROI(compPlane.getReal(zoom[2]), compPlane.getReal(zoom[4]), compPlane.getImaginary(zoom[5]),
+                        compPlane.getImaginary(zoom[3]));
+            }
+            zooms.clear();
+            compPlane.translate(dx, dy);
+        }
+
+        long start = System.nanoTime(), time;
+        if (resume) {
+            time = FractalRenderer.render(context);
+            if (!context.isCancelled())
+                publish(1);
+        } else if (reuse) {
+            // Shift the pixels which are still in the view and compute the columns and the rows exposed by the translation
+            context.shift(dx, dy);
+            time = FractalRenderer.renderRegions(context, new int[] { dx > 0 ? 0 : WIDTH + dx, 0, Math.abs(dx), HEIGHT },
+                    new int[] { Math.max(0, dx), dy > 0 ? 0 : HEIGHT + dy, WIDTH - Math.abs(dx), Math.abs(dy) });
+            if (!context.isCancelled())
+                publish(1);
+        } else
+            time = FractalRenderer.renderProgressive(context, COARSEST_STEP, step -> {
+                long colorTime = publish(step);
+                System.out.printf("Pass with step %d shown after %dms (colouring %dms)\n", step, (System.nanoTime() - start) / 1000000, colorTime);
+            });
+
+        synchronized (this) {
+            // The buffers only hold the view if no other view has been requested during the render
+            valid = !context.isCancelled();
+            if (!valid)
+                return;
+            validMaxItr = compPlane.getMaxIterations();
+        }
+        if (resume)
+            System.out.printf("maxItr raised to %d: %d unescaped orbits continued in %dms\n", compPlane.getMaxIterations(),
+                    context.getReport().getComputedPixels(), time);
+        else if (reuse)
+            System.out.printf("Panned by (%d, %d): %d pixels computed in %dms\n", dx, dy,
+                    Math.abs(dx) * HEIGHT + (WIDTH - Math.abs(dx)) * Math.abs(dy), time);
+        else {
+            System.out.printf("The calculation took %dms to execute\n", time);
+            System.out.println(context.getReport());
         }
         if (saveImage) {
             try {
@@ -178,20 +330,47 @@ public class FractalDraw extends JPanel {
             } catch (IOException e) {
                 e.printStackTrace();
             }
+            saveImage = false;
         }
-        saveImage = false;
-        // Then transfer the drawn BufferedImage into the JPanel
-        g.drawImage(bufImage, 0, 0, this);
-        // Paint the axes
+    }
+
+    // Method to colour the pixels computed so far (whose coordinates are multiples of step) into a new BufferedImage and publish it to the panel.
+    // Returns the time taken to colour the pixels in milliseconds.
+    private long publish(int step) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        long time = ColorScheme.paint(colorScheme, context, 0, HEIGHT, step, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0);
+        bufImage = image;
+        repaint();
+        return time;
+    }
+
+    // Method to switch the axes on
+    public void showAxes() {
+        this.show = true;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        // Transfer the BufferedImage of the latest pass into the JPanel (nothing is painted until the first pass is done)
+        BufferedImage image = bufImage;
+        if (image != null)
+            g.drawImage(image, 0, 0, this);
+        // Paint the axes where the view (which can be zoomed and panned) crosses them
         if (show) {
             g.setColor(Color.RED);
-            double[] ROI = compPlane.getROI();
-            if (ROI[2] <= 0)
-                for (int x = 0; x < WIDTH; x++)
-                    g.fillRect(x, (int) (-ROI[2] * WIDTH / (ROI[3] - ROI[2])), 1, 1);
-            if (ROI[0] <= 0)
-                for (int y = 0; y < HEIGHT; y++)
-                    g.fillRect((int) (-ROI[0] * WIDTH / (ROI[1] - ROI[0])), y, 1, 1);
+            int axisY = (int) Math.round(compPlane.getImaginary(0) / compPlane.getPixelSize());
+            int axisX = (int) Math.round(-compPlane.getReal(0) / compPlane.getPixelSize());
+            if (axisY >= 0 && axisY < HEIGHT)
+                g.fillRect(0, axisY, WIDTH, 1);
+            if (axisX >= 0 && axisX < WIDTH)
+                g.fillRect(axisX, 0, 1, HEIGHT);
+        }
+        // Paint the rectangle being selected for zooming
+        Rectangle rectangle = selection;
+        if (rectangle != null) {
+            g.setColor(Color.WHITE);
+            g.drawRect(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
         }
     }
 
@@ -0,0 +1,157 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    FractalRenderer computes the iteration counts and potential values of a RenderContext. It does not depend on Swing or the AWT event thread, so it is
+    shared by the GUI (FractalDraw) and the headless render mode (BatchRenderer).
+
+    The calculation is done by IterationCounter tasks in a ForkJoinPool, which split the canvas into segments of at most SEG_SIZE x SEG_SIZE pixels (and
+    keep splitting the expensive ones) so that the idle threads can steal the remaining work. The parallelism of the pool defaults to the number of
+    available processors. The contexts which have boundary tracing switched on are rendered by MarianiSilver tasks instead, and the contexts which have
+    a TileCache are rendered tile by tile through the cache (see CachedTileRenderer). The contexts which have symmetry switched on only compute the unique
+    part of the views of symmetric fractals (see SymmetricRenderer). A resumable context (see RenderContext.setResumable) stores the
+    orbits which do not escape, and when only maxItr has been raised since its last render, the render just continues them (see OrbitStore).
+
+    Every render first calls the prepare method of the ComplexPlane object (e.g. to compute the reference orbit of a perturbation render).
+
+    All the render state lives in the RenderContext objects, so renders of different contexts can run on the pool at the same time.
+
+    renderProgressive computes a context in coarse to fine passes (see ProgressivePass) and hands each finished pass to a listener, so an approximation
+    of the image can be shown long before the full resolution render is done. renderRegions computes only some rectangles of a context (e.g. the strips
+    exposed when the view is panned).
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+public class FractalRenderer {
+    // The size of the pixel area segment that one task handles
+    public static final int SEG_SIZE = 100;
+
+    // The pool which runs the IterationCounter tasks of all the renders
+    private static ForkJoinPool pool;
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+
+    // Method to set the number of threads used to compute the fractals
+    public static synchronized void setParallelism(int _parallelism) {
+        if (_parallelism < 1)
+            throw new IllegalArgumentException("Invalid parallelism " + _parallelism);
+        if (pool != null && parallelism != _parallelism) {
+            pool.shutdown();
+            pool = null;
+        }
+        parallelism = _parallelism;
+    }
+
+    // Method to get the number of threads used to compute the fractals
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+    // Method to get the pool shared by all the renders
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool(parallelism);
+        return pool;
+    }
+
+    // Method to start computing the iterationsCount and smoothColors buffers of the given RenderContext object in the shared pool
+    public static ForkJoinTask<Void> submit(RenderContext context) {
+        LoadReport report = new LoadReport();
+        context.setReport(report);
+        context.getPlane().prepare();
+        OrbitStore orbits = context.getOrbits();
+        boolean resume = orbits != null && orbits.canResume(context);
+        if (orbits != null && !resume)
+            orbits.startCapture(context);
+        RecursiveAction task = resume ? orbits.resume(context, report) : context.getTileCache() != null ? new CachedTileRenderer(context, context.getTileCache(), report)
+                : context.isBoundaryTracing() ? new MarianiSilver(context, report)
+                : context.isSymmetry() && context.getPlane().getSymmetry() != ComplexPlane.NO_SYMMETRY ? new SymmetricRenderer(context, report)
+                : new IterationCounter(context, 0, 0, context.getWidth(), context.getHeight(), report);
+        long start = System.nanoTime();
+        return getPool().submit(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                task.invoke();
+                if (orbits != null)
+                    orbits.finish(context);
+                // Record the wall clock time of the render once all the segments are done
+                finish(context, report, System.nanoTime() - start);
+            }
+        });
+    }
+
+    // Method to compute the iterationsCount and smoothColors buffers of the given RenderContext object.
+    // Returns the time taken for the computation in milliseconds.
+    public static long render(RenderContext context) {
+        long start = System.nanoTime();
+        submit(context).join();
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    // Method to compute the given RenderContext object in passes, starting with the pixels whose coordinates are multiples of coarsestStep and halving
+    // the step until every pixel is computed. onPass is called with the step of each pass as soon as it is done (on the calling thread).
+    // Returns the time taken for the whole computation in milliseconds.
+    public static long renderProgressive(RenderContext context, int coarsestStep, IntConsumer onPass) {
+        if (Integer.bitCount(coarsestStep) != 1)
+            throw new IllegalArgumentException("The coarsest step must be a power of two: " + coarsestStep);
+        LoadReport report = new LoadReport();
+        context.setReport(report);
+        context.getPlane().prepare();
+        OrbitStore orbits = context.getOrbits();
+        if (orbits != null)
+            orbits.startCapture(context);
+        // The time spent by the listener is not part of the computation
+        long time = 0;
+        for (int step = coarsestStep; step >= 1; step /= 2) {
+            long start = System.nanoTime();
+            getPool().invoke(new ProgressivePass(context, 0, context.getHeight(), step, step < coarsestStep, report));
+            time += System.nanoTime() - start;
+            // The passes of a cancelled render are not shown
+            if (context.isCancelled())
+                break;
+            onPass.accept(step);
+        }
+        if (orbits != null)
+            orbits.finish(context);
+        finish(context, report, time);
+        return time / 1000000;
+    }
+
+    // Method to compute the given rectangles {x, y, width, height} of the RenderContext object.
+    // Returns the time taken for the computation in milliseconds.
+    public static long renderRegions(RenderContext context, int[]... regions) {
+        LoadReport report = new LoadReport();
+        context.setReport(report);
+        // The orbits stored by an earlier render do not match the buffers any more
+        if (context.getOrbits() != null)
+            context.getOrbits().clear();
+        context.getPlane().prepare();
+        long start = System.nanoTime();
+        getPool().invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                List<IterationCounter> tasks = new ArrayList<>();
+                for (int[] region : regions)
+                    if (region[2] > 0 && region[3] > 0)
+                        tasks.add(new IterationCounter(context, region[0], region[1], region[2], region[3], report));
+                invokeAll(tasks);
+            }
+        });
+        finish(context, report, System.nanoTime() - start);
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    // Method to record the wall clock time of a finished render in its LoadReport and the render in the RenderMetrics
+    private static void finish(RenderContext context, LoadReport report, long wallNanos) {
+        report.finish(wallNanos, parallelism);
+        RenderMetrics.recordRender(context, report);
+    }
+}
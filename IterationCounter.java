@@ -1,23 +1,109 @@
 /*
     Copyright (C) 2020, Sathira Silva. (E/17/331)
 
-    IterationCounter class is a derived class from Runnable which is used to calculate the number of iterations corresponding to each pixel, in segments.
+    IterationCounter class is a derived class from RecursiveAction which is used to calculate the number of iterations corresponding to each pixel, in segments.
+
+    A segment larger than SEG_SIZE x SEG_SIZE is split into two halves which are computed as separate tasks, so the idle threads of the ForkJoinPool can
+    steal them. Segments covering the inside of the set take up to maxItr times longer than the others, so a segment also keeps splitting while it is
+    being computed: once the rows computed so far have taken more than SPLIT_ITERATIONS iterations, the remaining rows are split into new tasks.
+
+    The rows are computed by the RowKernel of the RenderContext (e.g. the SIMD kernel) when it has one which supports its ComplexPlane object, and by the
+    scalar kernel of the ComplexPlane object otherwise.
+
+    When the render stores the orbits which do not escape (see OrbitStore), the rows are computed by the scalar kernel into a chunk of the store.
+
+    The tasks stop at the end of a row when the render of the RenderContext has been cancelled.
+
+    Every task records its time and iterations in the LoadReport. When the render is instrumented (a JFR recording enables the fractals.Tile event or
+    RenderMetrics collects its counters) it also counts the escaped and interior pixels of its rows, see RenderMetrics.
 */
 
-public class IterationCounter implements Runnable {
-    private static final int WIDTH = 800, HEIGHT = 800;
-    
-    private int x, y;
+import java.util.concurrent.RecursiveAction;
 
-    public IterationCounter(int x, int y) {
+public class IterationCounter extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    // The number of iterations after which an expensive segment splits its remaining rows
+    private static final long SPLIT_ITERATIONS = 1L << 20;
+    // The minimum number of rows of a segment which can be split
+    private static final int MIN_SPLIT = 8;
+
+    private RenderContext context;
+    private int x, y, width, height;
+    private transient LoadReport report;
+
+    public IterationCounter(RenderContext context, int x, int y, int width, int height, LoadReport report) {
+        this.context = context;
         this.x = x;
         this.y = y;
+        this.width = width;
+        this.height = height;
+        this.report = report;
     }
 
     @Override
-    public void run() {
-        for (int i = x; i < WIDTH && i < x + FractalDraw.SEG_SIZE; i++)
-            for (int j = y; j < HEIGHT && j < y + FractalDraw.SEG_SIZE; j++)
-                FractalDraw.iterationsCount[i][j] = FractalDraw.compPlane.countIterations(i, j);
+    protected void compute() {
+        if (context.isCancelled())
+            return;
+        // Split the segments larger than SEG_SIZE x SEG_SIZE along the longer side
+        if (width > FractalRenderer.SEG_SIZE || height > FractalRenderer.SEG_SIZE) {
+            if (width >= height)
+                invokeAll(new IterationCounter(context, x, y, width / 2, height, report),
+                        new IterationCounter(context, x + width / 2, y, width - width / 2, height, report));
+            else
+                invokeAll(new IterationCounter(context, x, y, width, height / 2, report),
+                        new IterationCounter(context, x, y + height / 2, width, height - height / 2, report));
+            return;
+        }
+
+        ComplexPlane plane = context.getPlane();
+        RowKernel kernel = context.getRowKernel();
+        OrbitStore orbits = context.getOrbits();
+        OrbitStore.Chunk chunk = orbits != null && orbits.isCapturing() ? orbits.newChunk() : null;
+        RenderMetrics.TileEvent event = new RenderMetrics.TileEvent();
+        event.begin();
+        boolean instrumented = event.isEnabled() || RenderMetrics.collecting();
+        int maxItr = plane.getMaxIterations(), rows = 0;
+        int[] counts = context.getIterationsCount();
+        long start = LoadReport.now(), iterations = 0, interior = 0;
+        for (int j = y; j < y + height && !context.isCancelled(); j++, rows++) {
+            long row = chunk != null ? chunk.countRow(context, x, x + width, j) : kernel == null ? -1 : kernel.countRow(context, x, x + width, j);
+            iterations += row >= 0 ? row : plane.countRow(context, x, x + width, j);
+            if (instrumented)
+                for (int i = j * context.getWidth() + x, end = i + width; i < end; i++)
+                    if (counts[i] >= maxItr)
+                        interior++;
+            // Split the remaining rows of an expensive segment into two new tasks
+            int remaining = y + height - j - 1;
+            if (iterations > SPLIT_ITERATIONS && remaining >= 2 * MIN_SPLIT) {
+                finish(event, instrumented, LoadReport.now() - start, rows + 1, iterations, interior);
+                invokeAll(new IterationCounter(context, x, j + 1, width, remaining / 2, report),
+                        new IterationCounter(context, x, j + 1 + remaining / 2, width, remaining - remaining / 2, report));
+                return;
+            }
+        }
+        finish(event, instrumented, LoadReport.now() - start, rows, iterations, interior);
+    }
+
+    // Method to record the rows computed by this task in the LoadReport and, when instrumented, in the RenderMetrics and the JFR event
+    private void finish(RenderMetrics.TileEvent event, boolean instrumented, long nanos, int rows, long iterations, long interior) {
+        report.addTile(nanos);
+        report.addIterations(iterations);
+        if (!instrumented)
+            return;
+        long escaped = (long) rows * width - interior;
+        report.addPixelCounts(escaped, interior);
+        RenderMetrics.recordTile(nanos, iterations, escaped, interior);
+        event.end();
+        if (event.shouldCommit()) {
+            event.fractal = context.getPlane().getClass().getName();
+            event.x = x;
+            event.y = y;
+            event.width = width;
+            event.height = rows;
+            event.iterations = iterations;
+            event.escapedPixels = escaped;
+            event.interiorPixels = interior;
+            event.commit();
+        }
     }
 }
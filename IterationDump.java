@@ -0,0 +1,194 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    IterationDump is a versioned binary file format which holds the computed values of a render (the iteration counts and the potential values of
+    every pixel) together with the parameters of the fractal, so the render can be coloured again with other colouring schemes without computing it
+    again (see Recolorer). All the numbers are big endian.
+
+      MAGIC       'FDMP' (int) and VERSION (short)
+      JOB         the parameters of the fractal as a JOB message of the TileProtocol class: the type of the fractal, the size of the canvas, maxItr,
+                  the flags and the ROI (and the Julia constant or the centre of a DeepMandelbrot view)
+      LAYOUT      the number of bytes of every iteration count (byte: 1 if maxItr < 256, 2 if maxItr < 65536 and 4 otherwise), the compression of the
+                  values (byte: 0 none, 1 deflate) and the size of the values before the compression (long)
+      VALUES      the iteration counts of the pixels in row major order, then the potential values (doubles) of the pixels which escaped only (the
+                  pixels which reached maxItr are never coloured from their potential values), deflated if the dump is compressed
+
+    A dump is written into a temporary file which is renamed once it is complete, so an interrupted render never leaves a partial dump behind. It is
+    read through a memory-mapped FileChannel: the values of an uncompressed dump are decoded straight from the mapping and the values of a compressed
+    dump are inflated from it in blocks, so the reader never copies the file through a stream. A dump has to fit into a single mapping (2 GB).
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+public class IterationDump {
+    public static final int MAGIC = 0x46444D50;
+    public static final short VERSION = 1;
+    private static final int UNCOMPRESSED = 0, DEFLATE = 1;
+    // The size of the blocks the values of a compressed dump are inflated into
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    // Method to write the values and the parameters of the given RenderContext object (which must hold its whole canvas) into a dump file
+    public static void write(RenderContext context, Path path, boolean compress) throws IOException {
+        ComplexPlane plane = context.getPlane();
+        if (context.getLeft() != 0 || context.getTop() != 0 || context.getWidth() != plane.getWidth() || context.getHeight() != plane.getHeight())
+            throw new IllegalArgumentException("Only a whole canvas can be dumped");
+        int maxItr = plane.getMaxIterations(), bytes = TileProtocol.countBytes(maxItr), pixels = context.getWidth() * context.getHeight();
+        int[] iterationsCount = context.getIterationsCount();
+        double[] smoothColors = context.getSmoothColors();
+        long escaped = 0;
+        for (int i = 0; i < pixels; i++)
+            if (iterationsCount[i] < maxItr)
+                escaped++;
+
+        Path partial = Paths.get(path + ".part");
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(partial), 1 << 16)) {
+            DataOutputStream header = new DataOutputStream(file);
+            header.writeInt(MAGIC);
+            header.writeShort(VERSION);
+            TileProtocol.writeJob(header, context);
+            header.writeByte(bytes);
+            header.writeByte(compress ? DEFLATE : UNCOMPRESSED);
+            header.writeLong((long) pixels * bytes + escaped * 8);
+            header.flush();
+
+            DataOutputStream out = new DataOutputStream(compress ? new DeflaterOutputStream(file, deflater, 1 << 16) : file);
+            for (int i = 0; i < pixels; i++) {
+                if (bytes == 1)
+                    out.writeByte(iterationsCount[i]);
+                else if (bytes == 2)
+                    out.writeShort(iterationsCount[i]);
+                else
+                    out.writeInt(iterationsCount[i]);
+            }
+            for (int i = 0; i < pixels; i++)
+                if (iterationsCount[i] < maxItr)
+                    out.writeDouble(smoothColors[i]);
+            // Finishes the compressed values
+            out.close();
+        } finally {
+            deflater.end();
+        }
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Method to read a dump file into a new RenderContext object holding the whole canvas of its ComplexPlane object
+    public static RenderContext read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("The dump is too large to be mapped");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // The header is parsed with the TileProtocol from a stream over the mapping
+            DataInputStream header = new DataInputStream(new InputStream() {
+                @Override
+                public int read() {
+                    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+                }
+            });
+            if (header.readInt() != MAGIC)
+                throw new IOException("Not an iteration dump");
+            int version = header.readShort();
+            if (version != VERSION)
+                throw new IOException("Unsupported version " + version + " of the iteration dump");
+            if (header.readByte() != TileProtocol.JOB)
+                throw new IOException("Invalid parameters of the fractal");
+            RenderContext context;
+            try {
+                // The dimensions are replaced by the size of the canvas once it is known
+                context = TileProtocol.readJob(header, 1, 1);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid parameters of the fractal: " + e.getMessage());
+            }
+            ComplexPlane plane = context.getPlane();
+            context = new RenderContext(plane, plane.getWidth(), plane.getHeight());
+            int bytes = header.readByte(), compression = header.readByte(), maxItr = plane.getMaxIterations();
+            long length = header.readLong();
+            if (bytes != TileProtocol.countBytes(maxItr) || (compression != UNCOMPRESSED && compression != DEFLATE))
+                throw new IOException("Invalid layout of the iteration dump");
+            if (compression == UNCOMPRESSED && buffer.remaining() != length)
+                throw new IOException("The iteration dump is truncated");
+            Values values = new Values(buffer.slice(), compression == DEFLATE);
+            try {
+                decode(values, context, bytes);
+            } finally {
+                values.close();
+            }
+            return context;
+        }
+    }
+
+    // Method to decode the values of a dump into the buffers of the RenderContext object
+    private static void decode(Values values, RenderContext context, int bytes) throws IOException {
+        int[] iterationsCount = context.getIterationsCount();
+        double[] smoothColors = context.getSmoothColors();
+        int maxItr = context.getPlane().getMaxIterations(), pixels = iterationsCount.length;
+        for (int i = 0; i < pixels; i++) {
+            ByteBuffer buffer = values.next(bytes);
+            iterationsCount[i] = bytes == 1 ? buffer.get() & 0xFF : bytes == 2 ? buffer.getShort() & 0xFFFF : buffer.getInt();
+        }
+        for (int i = 0; i < pixels; i++)
+            smoothColors[i] = iterationsCount[i] < maxItr ? values.next(8).getDouble() : 0;
+    }
+
+    // The values of a dump: either the mapping itself, or blocks inflated from the mapping
+    private static class Values {
+        private final Inflater inflater;
+        private ByteBuffer buffer;
+
+        // The values stored in the given mapping, inflated from it if they are compressed
+        Values(ByteBuffer mapping, boolean compressed) {
+            if (compressed) {
+                this.inflater = new Inflater();
+                this.inflater.setInput(mapping);
+                this.buffer = ByteBuffer.allocate(BLOCK_SIZE).flip();
+            } else {
+                this.inflater = null;
+                this.buffer = mapping;
+            }
+        }
+
+        // Method to get the buffer holding the next value of the given number of bytes
+        ByteBuffer next(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes)
+                return buffer;
+            if (inflater == null)
+                throw new IOException("The iteration dump is truncated");
+            // Inflate the next block after the bytes left of the previous one
+            buffer.compact();
+            try {
+                while (buffer.hasRemaining() && !inflater.finished())
+                    if (inflater.inflate(buffer) == 0 && inflater.needsInput())
+                        break;
+            } catch (DataFormatException e) {
+                throw new IOException("The iteration dump is corrupted", e);
+            }
+            buffer.flip();
+            if (buffer.remaining() < bytes)
+                throw new IOException("The iteration dump is truncated");
+            return buffer;
+        }
+
+        // Method to release the inflater
+        void close() {
+            if (inflater != null)
+                inflater.end();
+        }
+    }
+}
@@ -2,6 +2,8 @@
     Copyright (C) 2020, Sathira Silva. (E/17/331)
 
     Derived class from ComplexPlane which overrides ots own countIterations method to make the Julia set.
+
+    With the interior checks switched on, the orbits are checked for cycles.
 */
 
 public class JuliaSet extends ComplexPlane {
@@ -24,17 +26,80 @@ public class JuliaSet extends ComplexPlane {
         this.constant = new Complex(real, imaginary);
     }
 
+    public Complex getConstant() {
+        return this.constant;
+    }
+
+    // The constant is part of the fractal
+    @Override
+    public String getMappingKey(int maxItr) {
+        return String.format("%s/%a/%a", super.getMappingKey(maxItr), constant.getReal(), constant.getImaginary());
+    }
+
     @Override
-    public int countIterations(int x, int y) {
-        int count = 0;
-        Complex z = new Complex(Plane[x][y].getReal(), Plane[x][y].getImaginary());
+    public int countIterations(double real, double imaginary, double[] smooth, int index) {
+        // z starts from the complex number of the pixel
+        return iterate(real, imaginary, 0, smooth, index, null, 0);
+    }
+
+    @Override
+    public int resumeIterations(double real, double imaginary, double[] orbit, int i, int count, double[] smooth, int index) {
+        if (count == 0) {
+            orbit[2 * i] = real;
+            orbit[2 * i + 1] = imaginary;
+        }
+        return iterate(orbit[2 * i], orbit[2 * i + 1], count, smooth, index, orbit, i);
+    }
+
+    @Override
+    public boolean canResumeOrbits() {
+        return true;
+    }
+
+    // The orbits of z and -z are the same after the first iteration, since (-z)^2 = z^2
+    @Override
+    public int getSymmetry() {
+        return ORIGIN;
+    }
+
+    // Method to iterate z = zReal + i * zImag, reached after count iterations, until it escapes or reaches maxItr. The last point of the orbit is
+    // stored into orbit[2 * i] and orbit[2 * i + 1] unless orbit is null.
+    private int iterate(double zReal, double zImag, int count, double[] smooth, int index, double[] orbit, int i) {
+        double cReal = constant.getReal(), cImag = constant.getImaginary();
+        double zReal2 = zReal * zReal, zImag2 = zImag * zImag;
+        // The point of the orbit saved for the periodicity check
+        double checkReal = zReal, checkImag = zImag;
+        boolean checks = interiorChecks;
+        int steps = 0, period = 8;
         // Escape radius = 50
-        while (count < maxItr && (z.getReal() * z.getReal() + z.getImaginary() * z.getImaginary() < 100)) {
-            z.square();
-            z.add(this.constant);
+        while (count < maxItr && (zReal2 + zImag2 < 100)) {
+            // z = z^2 + c
+            zImag = 2 * zReal * zImag + cImag;
+            zReal = zReal2 - zImag2 + cReal;
+            zReal2 = zReal * zReal;
+            zImag2 = zImag * zImag;
             count++;
+            if (checks) {
+                // The orbit has come back to the point saved for the periodicity check, so it is in a cycle and never escapes
+                if (Math.abs(zReal - checkReal) < PERIOD_EPSILON && Math.abs(zImag - checkImag) < PERIOD_EPSILON) {
+                    savedIterations.add(maxItr - count);
+                    count = maxItr;
+                    break;
+                }
+                // Save a new point after 8, 16, 32, ... iterations to detect cycles of any length (Brent's algorithm)
+                if (++steps == period) {
+                    steps = 0;
+                    period *= 2;
+                    checkReal = zReal;
+                    checkImag = zImag;
+                }
+            }
+        }
+        if (orbit != null) {
+            orbit[2 * i] = zReal;
+            orbit[2 * i + 1] = zImag;
         }
-        FractalDraw.smoothColors[x][y] = Math.log(1.5 + count - Math.log(Math.log(z.abs())) / Math.log(2)) / 3.4;
+        smooth[index] = Math.log(1.5 + count - Math.log(Math.log(Math.sqrt(zReal2 + zImag2))) / Math.log(2)) / 3.4;
         return count;
     }
 }
@@ -0,0 +1,462 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    KernelAssembler writes the class file of a compiled FormulaKernel (see Formula) byte by byte and loads it, so the formulas are compiled without
+    the Java compiler or an assembler library, on any runtime (a JRE or a jlinked image as well as a JDK). The iterate method of the class is the
+    bytecode of the loop of the other kernels:
+        int count = 0;
+        double zr2 = zr * zr, zi2 = zi * zi;
+        while (count < maxItr && (zr2 + zi2 < 100)) {
+            double t0 = ...;        the statements added by temp
+            zr = RE;
+            zi = IM;
+            zr2 = zr * zr;
+            zi2 = zi * zi;
+            count++;
+        }
+        smooth[index] = Math.log(1.5 + count - Math.log(Math.log(Math.sqrt(zr2 + zi2))) / Math.log(DEGREE)) / 3.4;
+        return count;
+    where the expressions (Expr) are trees of the double operations, the methods of Math, the local variables and the constants, so the JIT compiler
+    optimizes the class like a hand written kernel.
+
+    The classes are written for Java 8 (class file version 52), whose verifier needs the types of the local variables at the two branch targets of the
+    loop (the StackMapTable attribute). The source of the method (toString) identifies the kernel, so the kernels are cached by it.
+*/
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KernelAssembler {
+    // The local variables of the iterate method: this, zr, zi, cr, ci, maxItr, smooth, index, count, zr2, zi2, then the temporaries (a double takes
+    // two)
+    private static final int ZR = 1, ZI = 3, CR = 5, CI = 7, MAX_ITR = 9, SMOOTH = 10, INDEX = 11, COUNT = 12, ZR2 = 13, ZI2 = 15, TEMPS = 17;
+    // The largest method whose branches can jump over the whole loop
+    private static final int MAX_CODE = 32767;
+    // The number of classes defined so far, which numbers their names
+    private static final AtomicInteger classes = new AtomicInteger();
+
+    // The opcodes of the instructions used by the kernels
+    private static final int ICONST_0 = 0x03, LDC2_W = 0x14, ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19, ALOAD_0 = 0x2a, ISTORE = 0x36, DSTORE = 0x39,
+            DASTORE = 0x52, DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DNEG = 0x77, IINC = 0x84, I2D = 0x87, DCMPG = 0x98, IFGE = 0x9c,
+            IF_ICMPGE = 0xa2, GOTO = 0xa7, IRETURN = 0xac, RETURN = 0xb1, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, WIDE = 0xc4;
+
+    // The operations of the expressions
+    private static final int LOCAL = 0, CONSTANT = 1, NEGATE = 2, CALL = 3, BINARY = 4;
+
+    // An expression of doubles: a local variable, a constant, the negation of an expression, a call of a method of Math, or an operation (+ - * /) on
+    // two expressions
+    public static final class Expr {
+        private final int op, local;
+        private final char operator;
+        private final double value;
+        private final String method;
+        private final Expr[] operands;
+
+        private Expr(int op, int local, char operator, double value, String method, Expr... operands) {
+            this.op = op;
+            this.local = local;
+            this.operator = operator;
+            this.value = value;
+            this.method = method;
+            this.operands = operands;
+        }
+
+        // Whether the expression is a local variable or a constant, which is used as it is instead of being stored into a temporary
+        boolean isSimple() {
+            return op == LOCAL || op == CONSTANT;
+        }
+
+        // The expression as Java source
+        @Override
+        public String toString() {
+            switch (op) {
+                case LOCAL:
+                    return local == ZR ? "zr" : local == ZI ? "zi" : local == CR ? "cr" : local == CI ? "ci" : "t" + (local - TEMPS) / 2;
+                case CONSTANT:
+                    return Double.isFinite(value) ? "(" + value + ")" : Double.isNaN(value) ? "Double.NaN"
+                            : value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+                case NEGATE:
+                    return "-" + operands[0];
+                case CALL: {
+                    StringBuilder source = new StringBuilder("Math.").append(method).append('(');
+                    for (int i = 0; i < operands.length; i++)
+                        source.append(i == 0 ? "" : ", ").append(operands[i]);
+                    return source.append(')').toString();
+                }
+                default:
+                    return "(" + operands[0] + " " + operator + " " + operands[1] + ")";
+            }
+        }
+    }
+
+    // The real and imaginary parts of z and c
+    public static final Expr Z_REAL = new Expr(LOCAL, ZR, ' ', 0, null), Z_IMAGINARY = new Expr(LOCAL, ZI, ' ', 0, null),
+            C_REAL = new Expr(LOCAL, CR, ' ', 0, null), C_IMAGINARY = new Expr(LOCAL, CI, ' ', 0, null);
+
+    public static Expr constant(double value) {
+        return new Expr(CONSTANT, 0, ' ', value, null);
+    }
+
+    public static Expr negate(Expr x) {
+        return new Expr(NEGATE, 0, ' ', 0, null, x);
+    }
+
+    // Method to get the expression of an operation (one of + - * /) on two expressions
+    public static Expr binary(char operator, Expr x, Expr y) {
+        return new Expr(BINARY, 0, operator, 0, null, x, y);
+    }
+
+    // Method to get the expression of a call of a method of Math on doubles which returns a double (e.g. sqrt or atan2)
+    public static Expr call(String method, Expr... arguments) {
+        return new Expr(CALL, 0, ' ', 0, method, arguments);
+    }
+
+    // The constant pool of the class, and the indices of its entries by their kind and value
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+    // The bytecode of the iterate method, the depth of its operand stack and the number of its local variables
+    private byte[] code = new byte[256];
+    private int length, stack, maxStack, locals = TEMPS;
+    // The offsets of the start of the loop, of the two branches which leave it and of the end of the loop
+    private int loop, exitCount, exitEscaped, end = -1;
+    // The source of the method
+    private final StringBuilder source = new StringBuilder();
+
+    // A kernel which starts the loop, to which the statements of the formula are added (temp) before it is finished (finish)
+    public KernelAssembler() {
+        op(ICONST_0, 1);
+        local(ISTORE, COUNT, -1);
+        square(ZR, ZR2);
+        square(ZI, ZI2);
+        loop = length;
+        local(ILOAD, COUNT, 1);
+        local(ILOAD, MAX_ITR, 1);
+        exitCount = branch(IF_ICMPGE, -2);
+        local(DLOAD, ZR2, 2);
+        local(DLOAD, ZI2, 2);
+        op(DADD, -2);
+        emit(constant(100));
+        op(DCMPG, -3);
+        exitEscaped = branch(IFGE, -1);
+    }
+
+    // Method to store an expression into a new local variable. Returns the variable, or the expression itself if it is null (0), a variable or a
+    // constant.
+    public Expr temp(Expr expression) {
+        if (expression == null || expression.isSimple())
+            return expression;
+        Expr variable = new Expr(LOCAL, locals, ' ', 0, null);
+        source.append("double ").append(variable).append(" = ").append(expression).append(";\n");
+        emit(expression);
+        local(DSTORE, locals, -2);
+        locals += 2;
+        return variable;
+    }
+
+    // Method to finish the loop with the expressions of the new z (null for 0) and the potential value with the given degree of the formula
+    public void finish(Expr real, Expr imaginary, double degree) {
+        source.append("zr = ").append(real).append(";\nzi = ").append(imaginary).append(";\ndegree ").append(degree).append('\n');
+        emit(real == null ? constant(0) : real);
+        local(DSTORE, ZR, -2);
+        emit(imaginary == null ? constant(0) : imaginary);
+        local(DSTORE, ZI, -2);
+        square(ZR, ZR2);
+        square(ZI, ZI2);
+        op(IINC, 0);
+        u1(COUNT);
+        u1(1);
+        int back = length;
+        op(GOTO, 0);
+        u2(loop - back);
+
+        end = length;
+        patch(exitCount);
+        patch(exitEscaped);
+        local(ALOAD, SMOOTH, 1);
+        local(ILOAD, INDEX, 1);
+        emit(constant(1.5));
+        local(ILOAD, COUNT, 1);
+        op(I2D, 1);
+        op(DADD, -2);
+        emit(call("log", call("log", call("sqrt", binary('+', new Expr(LOCAL, ZR2, ' ', 0, null), new Expr(LOCAL, ZI2, ' ', 0, null))))));
+        emit(call("log", constant(degree)));
+        op(DDIV, -2);
+        op(DSUB, -2);
+        op(INVOKESTATIC, 0);
+        u2(method("log", 1));
+        emit(constant(3.4));
+        op(DDIV, -2);
+        op(DASTORE, -4);
+        local(ILOAD, COUNT, 1);
+        op(IRETURN, -1);
+    }
+
+    // The source of the iterate method, which identifies the kernel
+    @Override
+    public String toString() {
+        return source.toString();
+    }
+
+    // Loads the classes of the kernels
+    private static class KernelLoader extends ClassLoader {
+        KernelLoader() {
+            super(FormulaKernel.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    // Method to define the class of the finished kernel and create the kernel. Throws IllegalStateException if it cannot be defined.
+    public FormulaKernel define() {
+        if (end < 0)
+            throw new IllegalStateException("the kernel is not finished");
+        if (length > MAX_CODE || locals > 0xffff)
+            throw new IllegalStateException("the formula is too large to be compiled");
+        String name = "CompiledFormula" + classes.incrementAndGet();
+        try {
+            byte[] bytes = write(name);
+            return (FormulaKernel) new KernelLoader().define(name, bytes).getDeclaredConstructor().newInstance();
+        } catch (IOException | ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("the formula could not be compiled (" + e + ")");
+        }
+    }
+
+    // Method to write the class file of the kernel with the given name
+    private byte[] write(String name) throws IOException {
+        int thisClass = classEntry(name), object = classEntry("java/lang/Object"), kernel = classEntry("FormulaKernel");
+        int init = utf8("<init>"), initType = utf8("()V"), iterate = utf8("iterate"), iterateType = utf8("(DDDDI[DI)I");
+        int objectInit = methodEntry("java/lang/Object", "<init>", "()V"), codeName = utf8("Code"), frames = utf8("StackMapTable");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xcafebabe);
+        out.writeShort(0);
+        out.writeShort(52);
+        out.writeShort(poolCount);
+        poolBytes.writeTo(out);
+        // public final class NAME implements FormulaKernel
+        out.writeShort(0x0031);
+        out.writeShort(thisClass);
+        out.writeShort(object);
+        out.writeShort(1);
+        out.writeShort(kernel);
+        out.writeShort(0);
+        out.writeShort(2);
+
+        // public NAME() { super(); }
+        out.writeShort(0x0001);
+        out.writeShort(init);
+        out.writeShort(initType);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(2 + 2 + 4 + 5 + 2 + 2);
+        out.writeShort(1);
+        out.writeShort(1);
+        out.writeInt(5);
+        out.writeByte(ALOAD_0);
+        out.writeByte(INVOKESPECIAL);
+        out.writeShort(objectInit);
+        out.writeByte(RETURN);
+        out.writeShort(0);
+        out.writeShort(0);
+
+        // The frames at the start of the loop (count, zr2 and zi2 appended to the arguments) and at its end (the same locals)
+        ByteArrayOutputStream frameBytes = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(frameBytes);
+        frame.writeShort(2);
+        frame.writeByte(254);
+        frame.writeShort(loop);
+        // Integer, Double, Double
+        frame.writeByte(1);
+        frame.writeByte(3);
+        frame.writeByte(3);
+        int delta = end - loop - 1;
+        if (delta < 64)
+            frame.writeByte(delta);
+        else {
+            frame.writeByte(251);
+            frame.writeShort(delta);
+        }
+
+        // public int iterate(double zr, double zi, double cr, double ci, int maxItr, double[] smooth, int index)
+        out.writeShort(0x0001);
+        out.writeShort(iterate);
+        out.writeShort(iterateType);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(2 + 2 + 4 + length + 2 + 2 + 2 + 4 + frameBytes.size());
+        out.writeShort(maxStack);
+        out.writeShort(locals);
+        out.writeInt(length);
+        out.write(code, 0, length);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeShort(frames);
+        out.writeInt(frameBytes.size());
+        frameBytes.writeTo(out);
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    // Method to emit the instructions which push the value of an expression
+    private void emit(Expr expression) {
+        switch (expression.op) {
+            case LOCAL:
+                local(DLOAD, expression.local, 2);
+                break;
+            case CONSTANT:
+                op(LDC2_W, 2);
+                u2(doubleEntry(expression.value));
+                break;
+            case NEGATE:
+                emit(expression.operands[0]);
+                op(DNEG, 0);
+                break;
+            case CALL:
+                for (Expr argument : expression.operands)
+                    emit(argument);
+                op(INVOKESTATIC, 2 - 2 * expression.operands.length);
+                u2(method(expression.method, expression.operands.length));
+                break;
+            default:
+                emit(expression.operands[0]);
+                emit(expression.operands[1]);
+                op(expression.operator == '+' ? DADD : expression.operator == '-' ? DSUB : expression.operator == '*' ? DMUL : DDIV, -2);
+        }
+    }
+
+    // Method to emit variable = variable * variable for the given double variables
+    private void square(int variable, int square) {
+        local(DLOAD, variable, 2);
+        local(DLOAD, variable, 2);
+        op(DMUL, -2);
+        local(DSTORE, square, -2);
+    }
+
+    // Method to emit an instruction on a local variable (with the wide prefix if its index does not fit in a byte)
+    private void local(int opcode, int index, int effect) {
+        if (index > 0xff) {
+            op(WIDE, 0);
+            op(opcode, effect);
+            u2(index);
+        } else {
+            op(opcode, effect);
+            u1(index);
+        }
+    }
+
+    // Method to emit a branch whose target is patched later. Returns its offset.
+    private int branch(int opcode, int effect) {
+        int offset = length;
+        op(opcode, effect);
+        u2(0);
+        return offset;
+    }
+
+    // Method to make the branch at the given offset jump to the current offset
+    private void patch(int branch) {
+        int jump = length - branch;
+        code[branch + 1] = (byte) (jump >> 8);
+        code[branch + 2] = (byte) jump;
+    }
+
+    // Method to emit an opcode, given the change of the depth of the operand stack by its instruction
+    private void op(int opcode, int effect) {
+        u1(opcode);
+        stack += effect;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void u1(int value) {
+        if (length == code.length)
+            code = Arrays.copyOf(code, 2 * length);
+        code[length++] = (byte) value;
+    }
+
+    private void u2(int value) {
+        u1(value >> 8);
+        u1(value);
+    }
+
+    // Methods to get the index of an entry of the constant pool, adding it if it is not in the pool yet
+    private int utf8(String value) {
+        Integer index = entries.get("U" + value);
+        if (index != null)
+            return index;
+        try {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        entries.put("U" + value, poolCount);
+        return poolCount++;
+    }
+
+    private int classEntry(String name) {
+        Integer index = entries.get("C" + name);
+        if (index != null)
+            return index;
+        int utf8 = utf8(name);
+        try {
+            pool.writeByte(7);
+            pool.writeShort(utf8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        entries.put("C" + name, poolCount);
+        return poolCount++;
+    }
+
+    private int methodEntry(String owner, String name, String type) {
+        Integer index = entries.get("M" + owner + "." + name + type);
+        if (index != null)
+            return index;
+        int ownerClass = classEntry(owner), nameUtf8 = utf8(name), typeUtf8 = utf8(type);
+        try {
+            // The name and type, then the method
+            pool.writeByte(12);
+            pool.writeShort(nameUtf8);
+            pool.writeShort(typeUtf8);
+            pool.writeByte(10);
+            pool.writeShort(ownerClass);
+            pool.writeShort(poolCount);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        entries.put("M" + owner + "." + name + type, poolCount + 1);
+        poolCount += 2;
+        return poolCount - 1;
+    }
+
+    // Method to get the entry of a method of Math with the given number of double arguments which returns a double
+    private int method(String name, int arguments) {
+        return methodEntry("java/lang/Math", name, "(" + "D".repeat(arguments) + ")D");
+    }
+
+    private int doubleEntry(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = entries.get("D" + bits);
+        if (index != null)
+            return index;
+        try {
+            pool.writeByte(6);
+            pool.writeDouble(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        // A double takes two entries
+        entries.put("D" + bits, poolCount);
+        poolCount += 2;
+        return poolCount - 2;
+    }
+}
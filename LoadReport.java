@@ -0,0 +1,148 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    LoadReport collects the timings of the tiles computed by the IterationCounter tasks of a render, so that the load imbalance between the tiles and
+    between the worker threads can be reported.
+
+    The time of a tile is measured in CPU time of the worker thread (when the JVM supports it), so that the threads which are waiting for a processor do
+    not count as busy on machines with fewer cores than the parallelism. The busy time of every worker thread is summed up; the ratio between the total
+    busy time and the wall clock time of the render is the speedup achieved over a single thread, and the ratio between the busiest worker and the
+    average worker shows how evenly the work was spread.
+
+    It also counts the iterations executed by the render (to report the iterations per second) and, when the render is instrumented (see RenderMetrics),
+    the pixels which escaped and the pixels which reached maxItr (the interior pixels) among the pixels computed by the IterationCounter tasks.
+*/
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadReport {
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+
+    private final AtomicInteger tiles = new AtomicInteger();
+    private final LongAdder tileNanos = new LongAdder();
+    private final LongAccumulator maxTileNanos = new LongAccumulator(Math::max, 0);
+    private final Map<Thread, LongAdder> workerNanos = new ConcurrentHashMap<>();
+    // Pixels which were iterated and pixels which were filled without iterating them (e.g. by the MarianiSilver tasks or mirrored by SymmetricRenderer)
+    private final LongAdder computedPixels = new LongAdder(), skippedPixels = new LongAdder();
+    private final LongAdder iterations = new LongAdder(), escapedPixels = new LongAdder(), interiorPixels = new LongAdder();
+    private long wallNanos;
+    private int parallelism;
+
+    // Method to get the current time used to measure the tiles in nanoseconds
+    public static long now() {
+        return cpuTime ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    // Method to record a tile computed by the current thread
+    public void addTile(long nanos) {
+        tiles.incrementAndGet();
+        tileNanos.add(nanos);
+        maxTileNanos.accumulate(nanos);
+        workerNanos.computeIfAbsent(Thread.currentThread(), t -> new LongAdder()).add(nanos);
+    }
+
+    // Method to record pixels which were iterated
+    public void addComputed(long pixels) {
+        computedPixels.add(pixels);
+    }
+
+    // Method to record pixels which were filled without iterating them
+    public void addSkipped(long pixels) {
+        skippedPixels.add(pixels);
+    }
+
+    // Method to record iterations executed by the render
+    public void addIterations(long count) {
+        iterations.add(count);
+    }
+
+    // Method to record the numbers of computed pixels which escaped and which reached maxItr
+    public void addPixelCounts(long escaped, long interior) {
+        escapedPixels.add(escaped);
+        interiorPixels.add(interior);
+    }
+
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    public long getEscapedPixels() {
+        return escapedPixels.sum();
+    }
+
+    public long getInteriorPixels() {
+        return interiorPixels.sum();
+    }
+
+    public long getComputedPixels() {
+        return computedPixels.sum();
+    }
+
+    public long getSkippedPixels() {
+        return skippedPixels.sum();
+    }
+
+    // Method to set the wall clock time of the render and the parallelism it was done with
+    public void finish(long wallNanos, int parallelism) {
+        this.wallNanos = wallNanos;
+        this.parallelism = parallelism;
+    }
+
+    public int getTiles() {
+        return tiles.get();
+    }
+
+    public long getWallNanos() {
+        return this.wallNanos;
+    }
+
+    public long getMaxTileNanos() {
+        return maxTileNanos.get();
+    }
+
+    // Method to get the number of iterations executed per second of wall clock time
+    public double getIterationsPerSecond() {
+        return wallNanos == 0 ? 0 : iterations.sum() * 1e9 / wallNanos;
+    }
+
+    // Method to get the fraction of the time of the worker threads which was spent computing tiles
+    public double getThreadUtilization() {
+        return parallelism == 0 ? 0 : getSpeedup() / parallelism;
+    }
+
+    // Method to get the speedup over computing all the tiles in a single thread
+    public double getSpeedup() {
+        return wallNanos == 0 ? 0 : tileNanos.sum() / (double) wallNanos;
+    }
+
+    // Method to get the ratio between the busy time of the busiest worker and the average worker
+    public double getWorkerImbalance() {
+        long max = 0, sum = 0;
+        for (LongAdder nanos : workerNanos.values()) {
+            max = Math.max(max, nanos.sum());
+            sum += nanos.sum();
+        }
+        return sum == 0 ? 0 : max * workerNanos.size() / (double) sum;
+    }
+
+    @Override
+    public String toString() {
+        int count = tiles.get();
+        String pixels = "";
+        if (computedPixels.sum() + skippedPixels.sum() > 0)
+            pixels = String.format(", %d pixels computed, %d skipped", computedPixels.sum(), skippedPixels.sum());
+        if (iterations.sum() > 0)
+            pixels += String.format(", %.1fM iterations/s", getIterationsPerSecond() / 1e6);
+        return String.format(
+                "%d tiles (mean %.2fms, max %.2fms), %d/%d workers used, worker imbalance %.2f, speedup %.2fx%s",
+                count, count == 0 ? 0 : tileNanos.sum() / 1e6 / count, maxTileNanos.get() / 1e6,
+                workerNanos.size(), parallelism, getWorkerImbalance(), getSpeedup(), pixels);
+    }
+}
@@ -2,6 +2,9 @@
     Copyright (C) 2020, Sathira Silva. (E/17/331)
 
     Derived class from ComplexPlane which overrides ots own countIterations method to make the Mandelbrot set.
+
+    With the interior checks switched on, the points in the main cardioid and the period-2 bulb are detected with their closed form membership tests
+    and the orbits of the other points are checked for cycles.
 */
 
 public class MandelbrotSet extends ComplexPlane {
@@ -9,18 +12,78 @@ public class MandelbrotSet extends ComplexPlane {
         super();
     }
 
+    // Method to check whether the point c = real + i * imaginary is inside the main cardioid or the period-2 bulb
+    private static boolean isInMainBulbs(double real, double imaginary) {
+        double imag2 = imaginary * imaginary, q = (real - 0.25) * (real - 0.25) + imag2;
+        return q * (q + (real - 0.25)) <= 0.25 * imag2 || (real + 1) * (real + 1) + imag2 <= 0.0625;
+    }
+
+    @Override
+    public int countIterations(double real, double imaginary, double[] smooth, int index) {
+        // z starts from 0
+        return iterate(real, imaginary, 0d, 0d, 0, smooth, index, null, 0);
+    }
+
+    @Override
+    public int resumeIterations(double real, double imaginary, double[] orbit, int i, int count, double[] smooth, int index) {
+        if (count == 0)
+            orbit[2 * i] = orbit[2 * i + 1] = 0d;
+        return iterate(real, imaginary, orbit[2 * i], orbit[2 * i + 1], count, smooth, index, orbit, i);
+    }
+
+    @Override
+    public boolean canResumeOrbits() {
+        return true;
+    }
+
+    // The orbit of conj(c) is the conjugate of the orbit of c (the kernel only negates the imaginary parts, which is exact)
     @Override
-    public int countIterations(int x, int y) {
-        int count = 0;
-        Complex z = new Complex(0d, 0d);
-        Complex _c = Plane[x][y];
+    public int getSymmetry() {
+        return REAL_AXIS;
+    }
+
+    // Method to iterate z = zReal + i * zImag, reached after count iterations, until it escapes or reaches maxItr. The last point of the orbit is
+    // stored into orbit[2 * i] and orbit[2 * i + 1] unless orbit is null.
+    private int iterate(double real, double imaginary, double zReal, double zImag, int count, double[] smooth, int index, double[] orbit, int i) {
+        boolean checks = interiorChecks;
+        if (checks && isInMainBulbs(real, imaginary)) {
+            savedIterations.add(maxItr - count);
+            smooth[index] = 0d;
+            return maxItr;
+        }
+        double zReal2 = zReal * zReal, zImag2 = zImag * zImag;
+        // The point of the orbit saved for the periodicity check
+        double checkReal = zReal, checkImag = zImag;
+        int steps = 0, period = 8;
         // Escape radius = 50
-        while (count < maxItr && (z.getReal() * z.getReal() + z.getImaginary() * z.getImaginary() < 100)) {
-            z.square();
-            z.add(_c);
+        while (count < maxItr && (zReal2 + zImag2 < 100)) {
+            // z = z^2 + c
+            zImag = 2 * zReal * zImag + imaginary;
+            zReal = zReal2 - zImag2 + real;
+            zReal2 = zReal * zReal;
+            zImag2 = zImag * zImag;
             count++;
+            if (checks) {
+                // The orbit has come back to the point saved for the periodicity check, so it is in a cycle and never escapes
+                if (Math.abs(zReal - checkReal) < PERIOD_EPSILON && Math.abs(zImag - checkImag) < PERIOD_EPSILON) {
+                    savedIterations.add(maxItr - count);
+                    count = maxItr;
+                    break;
+                }
+                // Save a new point after 8, 16, 32, ... iterations to detect cycles of any length (Brent's algorithm)
+                if (++steps == period) {
+                    steps = 0;
+                    period *= 2;
+                    checkReal = zReal;
+                    checkImag = zImag;
+                }
+            }
+        }
+        if (orbit != null) {
+            orbit[2 * i] = zReal;
+            orbit[2 * i + 1] = zImag;
         }
-        FractalDraw.smoothColors[x][y] = Math.log(1.5 + count - Math.log(Math.log(z.abs())) / Math.log(2)) / 3.4;
+        smooth[index] = Math.log(1.5 + count - Math.log(Math.log(Math.sqrt(zReal2 + zImag2))) / Math.log(2)) / 3.4;
         return count;
     }
 }
@@ -0,0 +1,124 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    MarianiSilver is a derived class from RecursiveAction which renders a rectangle of a RenderContext with the Mariani-Silver (boundary tracing)
+    algorithm, as an alternative to the brute force IterationCounter tasks.
+
+    The border of a rectangle is computed first. The inside of the Mandelbrot set and the filled Julia sets is connected, so when every pixel on the border
+    of a rectangle takes maxItr iterations, the pixels inside the rectangle are filled with maxItr without iterating them. Otherwise the rectangle is split
+    into four by a horizontal and a vertical line, which are computed and become the borders of the four new tasks. Rectangles smaller than MIN_SIZE are
+    computed pixel by pixel.
+
+    Only the rectangles inside the set are filled: the pixels of a uniform band outside the set have the same number of iterations but different
+    potential values, which the smooth colouring scheme needs.
+
+    A task whose RenderContext has been cancelled returns without computing anything.
+*/
+
+import java.util.concurrent.RecursiveAction;
+
+public class MarianiSilver extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    // Rectangles narrower or lower than this are computed pixel by pixel
+    private static final int MIN_SIZE = 16;
+
+    private RenderContext context;
+    // The rectangle (inclusive coordinates) whose border has already been computed
+    private int x0, y0, x1, y1;
+    private transient LoadReport report;
+    // Whether the border of the rectangle still has to be computed
+    private boolean root;
+
+    private MarianiSilver(RenderContext context, int x0, int y0, int x1, int y1, LoadReport report) {
+        this.context = context;
+        this.x0 = x0;
+        this.y0 = y0;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.report = report;
+    }
+
+    // Creates the task which renders the whole RenderContext object
+    public MarianiSilver(RenderContext context, LoadReport report) {
+        this(context, 0, 0, context.getWidth() - 1, context.getHeight() - 1, report);
+        this.root = true;
+    }
+
+    @Override
+    protected void compute() {
+        if (context.isCancelled())
+            return;
+        long start = LoadReport.now();
+        // Compute the border of the whole canvas
+        if (root) {
+            computePixels(context, x0, y0, x1, y0);
+            if (y1 > y0)
+                computePixels(context, x0, y1, x1, y1);
+            computePixels(context, x0, y0 + 1, x0, y1 - 1);
+            if (x1 > x0)
+                computePixels(context, x1, y0 + 1, x1, y1 - 1);
+        }
+        int maxItr = context.getPlane().getMaxIterations();
+        // Pixels inside the rectangle, excluding its border
+        long inside = (long) Math.max(0, x1 - x0 - 1) * Math.max(0, y1 - y0 - 1);
+        if (inside == 0) {
+            report.addTile(LoadReport.now() - start);
+            return;
+        }
+
+        if (isUniform(maxItr)) {
+            // Fill the inside of the rectangle without iterating it
+            int[] iterationsCount = context.getIterationsCount();
+            double[] smoothColors = context.getSmoothColors();
+            double smooth = smoothColors[context.index(x0, y0)];
+            for (int y = y0 + 1; y < y1; y++)
+                for (int x = x0 + 1; x < x1; x++) {
+                    iterationsCount[context.index(x, y)] = maxItr;
+                    smoothColors[context.index(x, y)] = smooth;
+                }
+            report.addSkipped(inside);
+            report.addTile(LoadReport.now() - start);
+            return;
+        }
+
+        if (x1 - x0 <= MIN_SIZE || y1 - y0 <= MIN_SIZE) {
+            computePixels(context, x0 + 1, y0 + 1, x1 - 1, y1 - 1);
+            report.addTile(LoadReport.now() - start);
+            return;
+        }
+
+        // Split the rectangle into four and compute the lines which split it
+        int mx = (x0 + x1) / 2, my = (y0 + y1) / 2;
+        computePixels(context, mx, y0 + 1, mx, y1 - 1);
+        computePixels(context, x0 + 1, my, mx - 1, my);
+        computePixels(context, mx + 1, my, x1 - 1, my);
+        report.addTile(LoadReport.now() - start);
+        invokeAll(new MarianiSilver(context, x0, y0, mx, my, report), new MarianiSilver(context, mx, y0, x1, my, report),
+                new MarianiSilver(context, x0, my, mx, y1, report), new MarianiSilver(context, mx, my, x1, y1, report));
+    }
+
+    // Method to check whether every pixel on the border of the rectangle takes the given number of iterations
+    private boolean isUniform(int count) {
+        int[] iterationsCount = context.getIterationsCount();
+        for (int x = x0; x <= x1; x++)
+            if (iterationsCount[context.index(x, y0)] != count || iterationsCount[context.index(x, y1)] != count)
+                return false;
+        for (int y = y0 + 1; y < y1; y++)
+            if (iterationsCount[context.index(x0, y)] != count || iterationsCount[context.index(x1, y)] != count)
+                return false;
+        return true;
+    }
+
+    // Method to compute the pixels of the rectangle (inclusive coordinates) one by one
+    private static void computePixels(RenderContext context, int x0, int y0, int x1, int y1) {
+        ComplexPlane plane = context.getPlane();
+        long iterations = 0;
+        for (int y = y0; y <= y1; y++)
+            for (int x = x0; x <= x1; x++)
+                iterations += plane.countIterations(context, x, y);
+        if (x1 >= x0 && y1 >= y0) {
+            context.getReport().addComputed((long) (x1 - x0 + 1) * (y1 - y0 + 1));
+            context.getReport().addIterations(iterations);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    OrbitStore keeps the last point of the orbits which had not escaped at the end of a render of a RenderContext, so that the render can be continued
+    with a larger maxItr instead of being computed again from scratch: the pixels which escaped keep their values and only the stored orbits are
+    iterated further, from the iteration they had reached. The cost of raising maxItr is therefore proportional to the number of unresolved pixels
+    (typically the inside of the set and a thin band around it) rather than to the whole canvas.
+
+    The orbits are stored compactly in chunks of parallel primitive arrays (the index of the pixel in the buffers and the two doubles of the last point
+    of its orbit, 20 bytes per pixel). Every task of a capturing render (IterationCounter or ProgressivePass) fills a chunk of its own, and a render
+    which continues the orbits runs one task per chunk, which drops the orbits that escaped from its chunk in place. Nothing else is kept.
+
+    A render only captures the orbits when the ComplexPlane object can resume them (MandelbrotSet and JuliaSet) and the context is computed pixel by
+    pixel (no TileCache, no boundary tracing and no symmetry); the rows are then computed by the scalar kernel. The stored orbits are only continued when nothing
+    but maxItr has changed since they were captured (the same mapping, translation and region of the canvas), and they are dropped as soon as a render
+    of the context is cancelled, since its buffers and orbits are then left partially computed.
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveAction;
+
+public class OrbitStore {
+    // The initial number of orbits of a chunk
+    private static final int CHUNK_SIZE = 256;
+
+    // The orbits which had not escaped in a task of a render: the pixel at indices[k] of the buffers has reached the point
+    // z = orbits[2 * k] + i * orbits[2 * k + 1] after maxItr iterations
+    public static class Chunk {
+        private int[] indices = new int[CHUNK_SIZE];
+        private double[] orbits = new double[2 * CHUNK_SIZE];
+        private int size;
+
+        // Method to count the iterations of the pixel (x, y) of the given RenderContext object like ComplexPlane.countIterations, storing its orbit
+        // into the chunk if it does not escape
+        public int countIterations(RenderContext context, int x, int y) {
+            ComplexPlane plane = context.getPlane();
+            int index = context.index(x, y);
+            if (size == indices.length) {
+                indices = Arrays.copyOf(indices, 2 * size);
+                orbits = Arrays.copyOf(orbits, 4 * size);
+            }
+            int count = plane.resumeIterations(plane.getReal(context.getLeft() + x), plane.getImaginary(context.getTop() + y), orbits, size, 0,
+                    context.getSmoothColors(), index);
+            if (count >= plane.getMaxIterations())
+                indices[size++] = index;
+            return context.getIterationsCount()[index] = count;
+        }
+
+        // Method to count the iterations of the pixels x0 <= x < x1 of the row y of the given RenderContext object like ComplexPlane.countRow
+        public long countRow(RenderContext context, int x0, int x1, int y) {
+            long iterations = 0;
+            for (int x = x0; x < x1; x++)
+                iterations += countIterations(context, x, y);
+            return iterations;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+    // Whether the render in progress stores its orbits
+    private volatile boolean capturing;
+    // The mapping key, maxItr, translation and region of the canvas of the render which the orbits were stored by, or a null key if there are none
+    private String key;
+    private int maxItr, shiftX, shiftY, left, top;
+
+    // Method to check whether the render in progress stores its orbits into new chunks
+    public boolean isCapturing() {
+        return this.capturing;
+    }
+
+    // Method to get a new chunk for the orbits of a task of the render in progress
+    public Chunk newChunk() {
+        Chunk chunk = new Chunk();
+        chunks.add(chunk);
+        return chunk;
+    }
+
+    // Method to drop the stored orbits and make the next render of the given RenderContext object store its orbits (if it can)
+    public void startCapture(RenderContext context) {
+        clear();
+        capturing = context.getPlane().canResumeOrbits() && context.getTileCache() == null && !context.isBoundaryTracing() && !context.isSymmetry();
+    }
+
+    // Method to drop the stored orbits
+    public void clear() {
+        chunks.clear();
+        capturing = false;
+        key = null;
+    }
+
+    // Method to check whether the orbits stored for the given RenderContext object can be continued up to the maxItr of its ComplexPlane object
+    public boolean canResume(RenderContext context) {
+        ComplexPlane plane = context.getPlane();
+        return key != null && plane.getMaxIterations() > maxItr && context.getTileCache() == null && !context.isBoundaryTracing() && !context.isSymmetry()
+                && context.getLeft() == left && context.getTop() == top && plane.getShiftX() == shiftX && plane.getShiftY() == shiftY
+                && key.equals(plane.getMappingKey(maxItr));
+    }
+
+    // Method to record the state of a render of the given RenderContext object which captured or continued the orbits once it is done
+    public void finish(RenderContext context) {
+        capturing = false;
+        if (context.isCancelled()) {
+            clear();
+            return;
+        }
+        ComplexPlane plane = context.getPlane();
+        chunks.removeIf(chunk -> chunk.size == 0);
+        key = plane.getMappingKey();
+        maxItr = plane.getMaxIterations();
+        shiftX = plane.getShiftX();
+        shiftY = plane.getShiftY();
+        left = context.getLeft();
+        top = context.getTop();
+    }
+
+    // Method to get the number of stored orbits
+    public long size() {
+        long size = 0;
+        for (Chunk chunk : chunks)
+            size += chunk.size;
+        return size;
+    }
+
+    // Method to get a task which continues the stored orbits of the given RenderContext object up to the maxItr of its ComplexPlane object
+    // (see canResume) and records its work in the LoadReport
+    public RecursiveAction resume(RenderContext context, LoadReport report) {
+        return new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                List<RecursiveAction> tasks = new ArrayList<>();
+                for (Chunk chunk : chunks)
+                    tasks.add(new RecursiveAction() {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        protected void compute() {
+                            resume(context, chunk, report);
+                        }
+                    });
+                report.addSkipped((long) context.getWidth() * context.getHeight() - size());
+                invokeAll(tasks);
+            }
+        };
+    }
+
+    // Method to continue the orbits of a chunk, keeping the ones which still do not escape
+    private void resume(RenderContext context, Chunk chunk, LoadReport report) {
+        ComplexPlane plane = context.getPlane();
+        int[] counts = context.getIterationsCount(), indices = chunk.indices;
+        double[] smooth = context.getSmoothColors(), orbits = chunk.orbits;
+        int width = context.getWidth(), from = this.maxItr, to = plane.getMaxIterations(), kept = 0, k;
+        long start = LoadReport.now(), iterations = 0;
+        for (k = 0; k < chunk.size && !context.isCancelled(); k++) {
+            int index = indices[k];
+            int count = plane.resumeIterations(plane.getReal(context.getLeft() + index % width), plane.getImaginary(context.getTop() + index / width),
+                    orbits, k, from, smooth, index);
+            counts[index] = count;
+            iterations += count - from;
+            // Move the orbit over the ones which escaped
+            if (count >= to) {
+                indices[kept] = index;
+                orbits[2 * kept] = orbits[2 * k];
+                orbits[2 * kept + 1] = orbits[2 * k + 1];
+                kept++;
+            }
+        }
+        chunk.size = kept;
+        report.addComputed(k);
+        report.addIterations(iterations);
+        report.addTile(LoadReport.now() - start);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    Derived class from ComplexPlane which renders deep zooms of the Mandelbrot set with perturbation theory, beyond the precision of a double.
+
+    The centre of the view is kept as BigDecimal numbers. The orbit of the centre C (the reference orbit Z) is computed once with BigDecimal arithmetic
+    at a precision which is enough for the zoom level and stored as doubles. Every pixel c = C + dc is then iterated as a small double precision
+    difference dz from the reference orbit:
+        z = Z + dz,   dz' = 2 * Z * dz + dz^2 + dc
+    which only needs the difference dc from the centre (which a double represents exactly enough however deep the zoom is).
+
+    The perturbed orbit becomes inaccurate (a glitch) when z gets smaller than dz, i.e. when the pixel passes closer to 0 than the reference orbit does.
+    In that case (and when the reference orbit has escaped before the pixel) the pixel is rebased: dz is replaced by the full value of z and the pixel
+    continues from the beginning of the reference orbit, whose first point is 0. The number of rebases is counted so that it can be reported.
+
+    The reference orbit is computed by prepare, which FractalRenderer calls once before every render. It is published as an immutable Reference object
+    through a volatile field, so the pixels read it without taking a lock.
+
+    The differences are plain doubles, so zooms are limited to a pixel size of about 1e-300.
+*/
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.atomic.LongAdder;
+
+public class PerturbationMandelbrot extends ComplexPlane {
+    private BigDecimal centerReal = new BigDecimal("-0.5"), centerImag = BigDecimal.ZERO;
+    // Half of the size of the square which is fitted into the canvas
+    private double radius = 1.5d;
+    // The reference orbit of the current centre, or null until it is computed
+    private volatile Reference reference;
+    private final LongAdder rebases = new LongAdder();
+
+    // The reference orbit as doubles, with the maxItr and the precision it was computed for
+    private static class Reference {
+        final double[] real, imag;
+        final int length, maxItr, digits;
+
+        Reference(double[] real, double[] imag, int length, int maxItr, int digits) {
+            this.real = real;
+            this.imag = imag;
+            this.length = length;
+            this.maxItr = maxItr;
+            this.digits = digits;
+        }
+    }
+
+    public PerturbationMandelbrot() {
+        setCenter(centerReal, centerImag, radius);
+    }
+
+    public PerturbationMandelbrot(BigDecimal real, BigDecimal imaginary, double radius) {
+        setCenter(real, imaginary, radius);
+    }
+
+    // Method to set the centre of the view and half of the size of the square fitted into the canvas
+    public void setCenter(BigDecimal real, BigDecimal imaginary, double radius) {
+        // The ROI of the ComplexPlane is only an approximation used to show the position of the cursor and the axes
+        super.setROI(real.doubleValue() - radius, real.doubleValue() + radius, imaginary.doubleValue() - radius,
+                imaginary.doubleValue() + radius);
+        synchronized (this) {
+            this.centerReal = real;
+            this.centerImag = imaginary;
+            this.radius = radius;
+            this.reference = null;
+        }
+    }
+
+    @Override
+    public void setROI(double realMin, double realMax, double imagMin, double imagMax) {
+        setCenter(new BigDecimal((realMin + realMax) / 2), new BigDecimal((imagMin + imagMax) / 2),
+                Math.min(realMax - realMin, imagMax - imagMin) / 2);
+    }
+
+    // The centre is moved with BigDecimal arithmetic so that translating a deep zoom does not lose its precision
+    @Override
+    public void translate(int dx, int dy) {
+        double pixelSize = getPixelSize();
+        setCenter(centerReal.subtract(new BigDecimal(dx * pixelSize)), centerImag.add(new BigDecimal(dy * pixelSize)), radius);
+    }
+
+    public BigDecimal getCenterReal() {
+        return this.centerReal;
+    }
+
+    public BigDecimal getCenterImaginary() {
+        return this.centerImag;
+    }
+
+    public double getRadius() {
+        return this.radius;
+    }
+
+    // The ROI held by the ComplexPlane cannot resolve the pixels of a deep zoom, so the mapping is computed from the centre and the radius
+    @Override
+    public double getPixelSize() {
+        return 2 * radius / Math.max(getWidth(), getHeight());
+    }
+
+    @Override
+    public double getReal(double x) {
+        return centerReal.doubleValue() + (x - getWidth() / 2d) * getPixelSize();
+    }
+
+    @Override
+    public double getImaginary(double y) {
+        return centerImag.doubleValue() + (getHeight() / 2d - y) * getPixelSize();
+    }
+
+    // The mapping is defined by the centre and the radius (at any precision) and the size of the canvas
+    @Override
+    public String getMappingKey(int maxItr) {
+        return String.format("%s/%d/%b/%s/%s/%a/%dx%d", getClass().getName(), maxItr, interiorChecks, centerReal.toString(), centerImag.toString(),
+                radius, getWidth(), getHeight());
+    }
+
+    // Method to get the number of times a pixel was rebased onto the start of the reference orbit
+    public long getRebases() {
+        return rebases.sum();
+    }
+
+    // Method to get the number of points of the reference orbit (computing it if needed)
+    public int getReferenceLength() {
+        prepare();
+        return reference.length;
+    }
+
+    // Method to compute the reference orbit of the centre with BigDecimal arithmetic, unless it is already up to date
+    @Override
+    public synchronized void prepare() {
+        // Enough significant digits to resolve the pixels, plus some guard digits
+        int digits = Math.max(20, 20 - (int) Math.floor(Math.log10(getPixelSize())));
+        Reference reference = this.reference;
+        if (reference != null && reference.maxItr == maxItr && reference.digits >= digits)
+            return;
+        MathContext mc = new MathContext(digits);
+        double[] real = new double[maxItr + 1], imag = new double[maxItr + 1];
+        BigDecimal zReal = BigDecimal.ZERO, zImag = BigDecimal.ZERO, escape = BigDecimal.valueOf(100);
+        int n = 0;
+        real[0] = imag[0] = 0d;
+        while (n < maxItr) {
+            // Z = Z^2 + C
+            BigDecimal zReal2 = zReal.multiply(zReal, mc), zImag2 = zImag.multiply(zImag, mc);
+            if (zReal2.add(zImag2, mc).compareTo(escape) >= 0)
+                break;
+            zImag = zReal.multiply(zImag, mc).multiply(BigDecimal.valueOf(2), mc).add(centerImag, mc);
+            zReal = zReal2.subtract(zImag2, mc).add(centerReal, mc);
+            n++;
+            real[n] = zReal.doubleValue();
+            imag[n] = zImag.doubleValue();
+        }
+        this.reference = new Reference(real, imag, n + 1, maxItr, digits);
+    }
+
+    // Method to count the iterations of the pixel (x, y) as a perturbation of the reference orbit at the centre of the canvas
+    @Override
+    public int countPixel(double x, double y, double[] smooth, int index) {
+        double scale = getPixelSize();
+        return countDelta((x - getWidth() / 2d) * scale, (getHeight() / 2d - y) * scale, smooth, index);
+    }
+
+    // The complex number is only known as a double here, so it is perturbed from the double value of the centre
+    @Override
+    public int countIterations(double real, double imaginary, double[] smooth, int index) {
+        return countDelta(real - centerReal.doubleValue(), imaginary - centerImag.doubleValue(), smooth, index);
+    }
+
+    // Method to count the iterations of the point c = C + dc
+    private int countDelta(double dcReal, double dcImag, double[] smooth, int index) {
+        Reference reference = this.reference;
+        // Only the pixels computed outside of a render (or after maxItr was changed without one) compute the reference orbit here
+        if (reference == null || reference.maxItr != maxItr) {
+            prepare();
+            reference = this.reference;
+        }
+        double[] refReal = reference.real, refImag = reference.imag;
+        int length = reference.length, count = 0, n = 0;
+        // dz = dzReal + i * dzImag and z = Z[n] + dz, starting from 0
+        double dzReal = 0d, dzImag = 0d, zReal = 0d, zImag = 0d, zAbs2 = 0d;
+        long rebased = 0;
+        // Escape radius = 50
+        while (count < maxItr && zAbs2 < 100) {
+            // dz = 2 * Z * dz + dz^2 + dc
+            double zr = refReal[n], zi = refImag[n];
+            double real = 2 * (zr * dzReal - zi * dzImag) + dzReal * dzReal - dzImag * dzImag + dcReal;
+            dzImag = 2 * (zr * dzImag + zi * dzReal) + 2 * dzReal * dzImag + dcImag;
+            dzReal = real;
+            n++;
+            count++;
+            zReal = refReal[n] + dzReal;
+            zImag = refImag[n] + dzImag;
+            zAbs2 = zReal * zReal + zImag * zImag;
+            // Rebase when z gets smaller than dz (a glitch) or when the reference orbit has escaped
+            if (n == length - 1 || zAbs2 < dzReal * dzReal + dzImag * dzImag) {
+                dzReal = zReal;
+                dzImag = zImag;
+                n = 0;
+                rebased++;
+            }
+        }
+        if (rebased > 0)
+            rebases.add(rebased);
+        smooth[index] = Math.log(1.5 + count - Math.log(Math.log(Math.sqrt(zAbs2))) / Math.log(2)) / 3.4;
+        return count;
+    }
+}
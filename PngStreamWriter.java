@@ -0,0 +1,119 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    PngStreamWriter writes a PNG image (8 bit RGB) row by row, so an image can be encoded while it is still being computed and no more than one band of
+    rows has to be kept in memory (ImageIO needs the whole image in a BufferedImage before it can encode it).
+
+    Every row is written with the Sub filter and compressed with a single Deflater stream, which is split into IDAT chunks of at most CHUNK_SIZE bytes.
+*/
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+public class PngStreamWriter implements AutoCloseable {
+    private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+    // The maximum size of the compressed data in one IDAT chunk
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final int width, height;
+    private final Deflater compressor;
+    private final DeflaterOutputStream deflater;
+    private final byte[] row;
+    private int rowsWritten;
+
+    public PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + 3 * width];
+
+        this.out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(header);
+        data.writeInt(width);
+        data.writeInt(height);
+        // Bit depth 8, colour type 2 (RGB), deflate compression, adaptive filtering, no interlace
+        data.write(new byte[] { 8, 2, 0, 0, 0 });
+        writeChunk("IHDR", header.toByteArray(), header.size());
+        this.compressor = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        this.deflater = new DeflaterOutputStream(new IdatOutputStream(), compressor, CHUNK_SIZE);
+    }
+
+    // Method to write the given rows of RGB pixels (in row major order, starting at offset) into the image
+    public void writeRows(int[] rgb, int offset, int rows) throws IOException {
+        if (rowsWritten + rows > height)
+            throw new IOException("Too many rows written into the image");
+        for (int y = 0; y < rows; y++, offset += width) {
+            // Sub filter: each byte is stored as the difference from the same channel of the pixel on its left
+            row[0] = 1;
+            int previous = 0;
+            for (int x = 0; x < width; x++) {
+                int pixel = rgb[offset + x];
+                row[1 + 3 * x] = (byte) ((pixel >> 16) - (previous >> 16));
+                row[2 + 3 * x] = (byte) ((pixel >> 8) - (previous >> 8));
+                row[3 + 3 * x] = (byte) (pixel - previous);
+                previous = pixel;
+            }
+            deflater.write(row);
+        }
+        rowsWritten += rows;
+    }
+
+    // Method to finish the compressed data and write the end of the image. The stream is closed even when the image is incomplete.
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height)
+                throw new IOException(String.format("Only %d of %d rows were written into the image", rowsWritten, height));
+            deflater.close();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            compressor.end();
+            out.close();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    // Output stream which writes the compressed data into IDAT chunks
+    private class IdatOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return;
+            if (off == 0) {
+                writeChunk("IDAT", b, len);
+                return;
+            }
+            byte[] data = new byte[len];
+            System.arraycopy(b, off, data, 0, len);
+            writeChunk("IDAT", data, len);
+        }
+
+        // Closing the compressed data must not close the underlying stream before IEND is written
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -10,19 +10,23 @@ import javax.swing.JComponent;
 
 public class PositionLabel extends JComponent {
     private static final long serialVersionUID = 1L;
-    private static final int WIDTH = 800, HEIGHT = 800;
 
+    // ComplexPlane object whose complex numbers are shown
+    private ComplexPlane plane;
     // Coordinates of the cursor pointer inside the canvas
     private int x, y;
+
+    public PositionLabel(ComplexPlane plane) {
+        this.plane = plane;
+    }
     
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         g.setColor(Color.RED);
         // Ignore the cursor positions which are not in the Region Of Interest.
-        if (x >= WIDTH || y >= HEIGHT) return;
-        Complex curr = ComplexPlane.Plane[x][y];
-        g.drawString(String.format("(%.4f, %.4f)", curr.getReal(), curr.getImaginary()), x, y);
+        if (x >= plane.getWidth() || y >= plane.getHeight()) return;
+        g.drawString(String.format("(%.4f, %.4f)", plane.getReal(x), plane.getImaginary(y)), x, y);
     }
 
     // Method to set the x coordinate
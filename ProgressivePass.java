@@ -0,0 +1,67 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    ProgressivePass is a derived class from RecursiveAction which computes one pass of a progressive (coarse to fine) render of a RenderContext.
+
+    A pass with a given step computes the pixels whose coordinates are both multiples of the step, so the first pass with step 4 computes 1/16 of the
+    pixels. The following passes halve the step and reuse the samples of the previous pass: the pixels whose coordinates are both multiples of twice the
+    step have already been computed and are skipped, so every pixel is computed exactly once over all the passes.
+
+    When the render stores the orbits which do not escape (see OrbitStore), every task stores the orbits of its samples into a chunk of the store.
+
+    The rows of the pass are split into halves until a task has at most MAX_ROWS rows of samples. The tasks stop at the end of a row when the render
+    of the RenderContext has been cancelled.
+*/
+
+import java.util.concurrent.RecursiveAction;
+
+public class ProgressivePass extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    // The maximum number of rows of samples computed by one task
+    private static final int MAX_ROWS = 8;
+
+    private RenderContext context;
+    // The rows y0 <= y < y1 of the canvas
+    private int y0, y1, step;
+    // Whether the samples of a coarser pass are already computed
+    private boolean refine;
+    private transient LoadReport report;
+
+    public ProgressivePass(RenderContext context, int y0, int y1, int step, boolean refine, LoadReport report) {
+        this.context = context;
+        this.y0 = y0;
+        this.y1 = y1;
+        this.step = step;
+        this.refine = refine;
+        this.report = report;
+    }
+
+    @Override
+    protected void compute() {
+        // The first row of samples and the number of rows of samples in the task
+        int first = (y0 + step - 1) / step * step, rows = y1 > first ? (y1 - first + step - 1) / step : 0;
+        if (rows > MAX_ROWS) {
+            int middle = first + rows / 2 * step;
+            invokeAll(new ProgressivePass(context, y0, middle, step, refine, report),
+                    new ProgressivePass(context, middle, y1, step, refine, report));
+            return;
+        }
+
+        ComplexPlane plane = context.getPlane();
+        int width = context.getWidth();
+        OrbitStore orbits = context.getOrbits();
+        OrbitStore.Chunk chunk = orbits != null && orbits.isCapturing() ? orbits.newChunk() : null;
+        long start = LoadReport.now(), computed = 0, iterations = 0;
+        for (int y = first; y < y1 && !context.isCancelled(); y += step) {
+            // In the rows of the coarser pass only every other sample is new
+            boolean computedRow = refine && y % (2 * step) == 0;
+            for (int x = computedRow ? step : 0; x < width; x += computedRow ? 2 * step : step) {
+                iterations += chunk != null ? chunk.countIterations(context, x, y) : plane.countIterations(context, x, y);
+                computed++;
+            }
+        }
+        report.addComputed(computed);
+        report.addIterations(iterations);
+        report.addTile(LoadReport.now() - start);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    Recolorer is the recolour mode of the program. It reads the computed values of a render from an iteration dump (see IterationDump, written by
+    java Fractal render --dump FILE) and colours them into an image file with any colouring scheme, so an expensive render can be coloured again
+    without computing a single iteration.
+
+    Usage:
+    java Fractal recolor [--color smooth|gradient] [--output FILE] [--format FORMAT] DUMP
+
+    The output file defaults to the name of the dump with the extension of the image format (png by default).
+*/
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.imageio.ImageIO;
+
+public class Recolorer {
+    // Method to print an error message followed by the usage of the recolour mode
+    private static void printUsage(String errMessage) {
+        System.out.printf("\u001B[31mError: %s.\033[0m\n", errMessage);
+        System.out.println("Usage: java Fractal recolor [--color smooth|gradient] [--output FILE] [--format FORMAT] DUMP\n");
+        System.out.println("Colours the values of a render saved by java Fractal render --dump DUMP into an image file without computing them again.");
+        System.out.println("The output file defaults to the name of the dump with the extension of the image format (png by default).");
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int scheme = ColorScheme.SMOOTH;
+        String dump = null, output = null, format = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--color"))
+                    scheme = ColorScheme.parse(args[++i]);
+                else if (args[i].equals("--output"))
+                    output = args[++i];
+                else if (args[i].equals("--format"))
+                    format = args[++i];
+                else if (!args[i].startsWith("--") && dump == null)
+                    dump = args[i];
+                else
+                    throw new IllegalArgumentException();
+            }
+            if (dump == null)
+                throw new IllegalArgumentException();
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            printUsage("Invalid usage of arguments");
+            System.exit(0);
+        }
+        // The image format defaults to the extension of the output file (or png)
+        if (format == null) {
+            int dot = output == null ? -1 : output.lastIndexOf('.');
+            format = dot < 0 ? "png" : output.substring(dot + 1).toLowerCase();
+        }
+        if (output == null)
+            output = dump.replaceFirst("\\.[^./\\\\]*$", "") + "." + format;
+
+        try {
+            long start = System.nanoTime();
+            RenderContext context = IterationDump.read(Paths.get(dump));
+            long readTime = (System.nanoTime() - start) / 1000000;
+
+            int width = context.getWidth(), height = context.getHeight();
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            long colorTime = ColorScheme.paint(scheme, context, 0, height, 1, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0);
+
+            start = System.nanoTime();
+            if (!ImageIO.write(image, format, new File(output)))
+                throw new IOException("No image writer found for the format " + format);
+            System.out.printf("%s: %dx%d image coloured from %s (maxItr %d) without computing it (reading %dms, colouring %dms, writing %dms)\n",
+                    output, width, height, dump, context.getPlane().getMaxIterations(), readTime, colorTime, (System.nanoTime() - start) / 1000000);
+        } catch (IOException e) {
+            printUsage("Could not recolour " + dump + ": " + e.getMessage());
+            System.exit(0);
+        }
+        System.exit(0);
+    }
+}
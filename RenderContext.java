@@ -0,0 +1,189 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    RenderContext is the frame buffer of a single render. It owns the ComplexPlane object being rendered, the size of the canvas and the buffers which
+    store the number of iterations and the potential value (used for smooth colouring) of each pixel.
+
+    The buffers are flat primitive arrays in row major order: the pixel (x, y) is stored at the index y * width + x. Since nothing in a RenderContext is
+    shared, any number of renders (of different fractals) can run at the same time on the shared pool of the FractalRenderer class.
+
+    A RenderContext object can also hold just a region of the canvas of its ComplexPlane object (e.g. a band of rows of an image which is too large to
+    fit in memory), in which case the pixel (x, y) of the context is the pixel (left + x, top + y) of the canvas.
+
+    A render of the context can be cancelled (e.g. when the view shown by the GUI changes), in which case the tasks rendering it stop at the end of the
+    row they are computing and the buffers are left partially computed.
+*/
+
+public class RenderContext {
+    private final ComplexPlane plane;
+    private final int width, height;
+    private int left, top;
+    // To store the number of iterations taken by each complex number corresponding
+    // to each pixel on the canvas
+    private final int[] iterationsCount;
+    // To store the potential values which is computed to generate smooth spectrums
+    // of colors
+    /**
+     * @see MandelbrotSet#countIterations(double, double, double[], int) or
+     * @see JuliaSet#countIterations(double, double, double[], int) for more details.
+     */
+    private final double[] smoothColors;
+    // Tile timings of the last render of this context
+    private LoadReport report;
+    // Whether the context is rendered with the Mariani-Silver algorithm
+    private boolean boundaryTracing;
+    // Whether only the unique part of a symmetric view is computed and mirrored into the rest
+    private boolean symmetry;
+    // The kernel which computes whole rows of pixels, or null to use the scalar kernel of the ComplexPlane object
+    private RowKernel rowKernel;
+    // The cache of the tiles which the context is rendered through, or null to compute every pixel
+    private TileCache tileCache;
+    // The orbits which had not escaped in the last render, or null if the renders of the context cannot be continued with a larger maxItr
+    private OrbitStore orbits;
+    // Whether the render of the context has been cancelled
+    private volatile boolean cancelled;
+
+    // Creates a frame buffer of the given size and maps the ROI of the ComplexPlane object into it
+    public RenderContext(ComplexPlane plane, int width, int height) {
+        this(plane, 0, 0, width, height);
+        plane.setCanvasSize(width, height);
+    }
+
+    // Creates a frame buffer for the region of the canvas of the ComplexPlane object at (left, top) of the given size
+    public RenderContext(ComplexPlane plane, int left, int top, int width, int height) {
+        this.plane = plane;
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        this.iterationsCount = new int[width * height];
+        this.smoothColors = new double[width * height];
+    }
+
+    // Method to get the index of the pixel (x, y) in the buffers
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    public ComplexPlane getPlane() {
+        return this.plane;
+    }
+
+    // Method to move the region of the context to (left, top) on the canvas, so that its buffers can be reused for another region of the same size
+    public void moveTo(int left, int top) {
+        this.left = left;
+        this.top = top;
+    }
+
+    // Method to move the contents of the buffers by (dx, dy) pixels, e.g. when the view of the ComplexPlane object is translated by (dx, dy) pixels.
+    // The pixels moved in from outside of the buffers keep their old values, so they have to be computed again.
+    public void shift(int dx, int dy) {
+        int length = width - Math.abs(dx), from = Math.max(0, -dx), to = Math.max(0, dx);
+        if (length <= 0 || Math.abs(dy) >= height)
+            return;
+        // Copy the rows in the order which does not overwrite the rows still to be copied
+        for (int i = 0; i < height - Math.abs(dy); i++) {
+            int y = dy > 0 ? height - 1 - i : i;
+            System.arraycopy(iterationsCount, index(from, y - dy), iterationsCount, index(to, y), length);
+            System.arraycopy(smoothColors, index(from, y - dy), smoothColors, index(to, y), length);
+        }
+    }
+
+    // Method to ask the tasks rendering the context to stop as soon as possible
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    public void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    // Method to get the x coordinate of the region on the canvas
+    public int getLeft() {
+        return this.left;
+    }
+
+    // Method to get the y coordinate of the region on the canvas
+    public int getTop() {
+        return this.top;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int[] getIterationsCount() {
+        return this.iterationsCount;
+    }
+
+    public double[] getSmoothColors() {
+        return this.smoothColors;
+    }
+
+    // Method to get the number of iterations of the pixel (x, y)
+    public int getIterations(int x, int y) {
+        return iterationsCount[y * width + x];
+    }
+
+    // Method to get the potential value of the pixel (x, y)
+    public double getSmooth(int x, int y) {
+        return smoothColors[y * width + x];
+    }
+
+    public boolean isBoundaryTracing() {
+        return this.boundaryTracing;
+    }
+
+    public void setBoundaryTracing(boolean boundaryTracing) {
+        this.boundaryTracing = boundaryTracing;
+    }
+
+    public boolean isSymmetry() {
+        return this.symmetry;
+    }
+
+    public void setSymmetry(boolean symmetry) {
+        this.symmetry = symmetry;
+    }
+
+    public RowKernel getRowKernel() {
+        return this.rowKernel;
+    }
+
+    public void setRowKernel(RowKernel rowKernel) {
+        this.rowKernel = rowKernel;
+    }
+
+    public TileCache getTileCache() {
+        return this.tileCache;
+    }
+
+    public void setTileCache(TileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    // Method to make the renders of the context store the orbits which do not escape, so that raising maxItr only continues them (see OrbitStore)
+    public void setResumable(boolean resumable) {
+        this.orbits = resumable ? new OrbitStore() : null;
+    }
+
+    public OrbitStore getOrbits() {
+        return this.orbits;
+    }
+
+    public LoadReport getReport() {
+        return this.report;
+    }
+
+    public void setReport(LoadReport report) {
+        this.report = report;
+    }
+}
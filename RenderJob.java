@@ -0,0 +1,265 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    RenderJob describes a single image rendered by the headless render mode: the ComplexPlane object to render, the size of the image, the colouring
+    scheme and the file (and image format) the image is written into.
+
+    A job is parsed from the same arguments which are accepted by the GUI, preceded by optional render options:
+    [--width W] [--height H] [--output FILE] [--format FORMAT] [--color smooth|gradient] [--band-height ROWS] [--supersample N]
+    [--dump FILE] [--compress-dump] [--boundary-tracing] [--interior-checks] [--symmetry] [--simd] Mandelbrot|Julia [...]
+
+    The type DeepMandelbrot takes the centre of the view and half of its size instead of the ROI: DeepMandelbrot [C_REAL C_IMAG RADIUS] [MAXITR], and
+    renders it with perturbation theory (see PerturbationMandelbrot), so the centre can be given with any number of digits.
+
+    The types Formula and JuliaFormula take an iteration formula (see Formula) before the usual values: Formula FORMULA [REALMIN REALMAX IMAGMIN
+    IMAGMAX] [MAXITR] iterates it from z = 0 with c = the pixel, and JuliaFormula FORMULA [C_REAL C_IMAG] [MAXITR] from z = the pixel with the constant
+    c (see FormulaPlane). A formula in a job file cannot contain spaces (e.g. z^3+c), since the lines are split at the spaces.
+
+    When a band height is given the image is rendered and written band by band (see StreamingRenderer), which is only supported for PNG images.
+    --boundary-tracing renders the image with the Mariani-Silver algorithm (see MarianiSilver) and --interior-checks switches on the interior checks of
+    the ComplexPlane object. --symmetry only computes the unique part of a view of a symmetric fractal and mirrors it into the rest (see
+    SymmetricRenderer). --simd computes the rows of the image with the SIMD kernel (see RowKernel) when it is available. --supersample N colours
+    the image with adaptive supersampling, sampling the pixels on the edges again with N x N jittered samples (see Supersampler). --dump FILE also
+    saves the computed values of the image into an iteration dump (see IterationDump), which --compress-dump deflates, so that the image can be
+    coloured again later without computing it (java Fractal recolor FILE). Band by band renders cannot be dumped.
+
+    The jobs of a batch which is given workers are computed by the workers (see DistributedRenderer) instead of the local pool.
+*/
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+public class RenderJob {
+    private ComplexPlane plane;
+    private String type, output, format, dump;
+    private int width = 800, height = 800, colorScheme = ColorScheme.SMOOTH, bandHeight;
+    // The number of samples per side of the supersampled pixels, or 0 to colour every pixel from its own sample only
+    private int supersample;
+    private boolean boundaryTracing, interiorChecks, symmetry, simd, compressDump;
+    // The cache shared by the jobs of a batch, or null
+    private TileCache tileCache;
+    // The workers shared by the jobs of a batch, or null to compute the jobs locally
+    private List<InetSocketAddress> workers;
+
+    // Method to parse a render job from the command line arguments (or a line of a job file)
+    public static RenderJob parse(String[] args) {
+        RenderJob job = new RenderJob();
+        int i = 0;
+        // Parse the render options
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            // Options which do not take a value
+            if (args[i].equals("--boundary-tracing")) {
+                job.boundaryTracing = true;
+                continue;
+            }
+            if (args[i].equals("--interior-checks")) {
+                job.interiorChecks = true;
+                continue;
+            }
+            if (args[i].equals("--symmetry")) {
+                job.symmetry = true;
+                continue;
+            }
+            if (args[i].equals("--simd")) {
+                job.simd = true;
+                continue;
+            }
+            if (args[i].equals("--compress-dump")) {
+                job.compressDump = true;
+                continue;
+            }
+            if (i + 1 == args.length)
+                throw new IllegalArgumentException("Missing value for the option " + args[i]);
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--width":
+                    job.width = parsePositive(value);
+                    break;
+                case "--height":
+                    job.height = parsePositive(value);
+                    break;
+                case "--output":
+                    job.output = value;
+                    break;
+                case "--format":
+                    job.format = value;
+                    break;
+                case "--dump":
+                    job.dump = value;
+                    break;
+                case "--band-height":
+                    job.bandHeight = parsePositive(value);
+                    break;
+                case "--color":
+                    job.colorScheme = ColorScheme.parse(value);
+                    break;
+                case "--supersample":
+                    job.supersample = parsePositive(value);
+                    if (job.supersample < Supersampler.MIN_SAMPLES || job.supersample > Supersampler.MAX_SAMPLES)
+                        throw new IllegalArgumentException("Invalid number of samples " + value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+            }
+        }
+        if (i == args.length)
+            throw new IllegalArgumentException("Missing FractalType operand");
+        job.type = args[i];
+        // The formula comes before the values of the formula types
+        boolean formula = job.type.equals("Formula") || job.type.equals("JuliaFormula");
+        if (formula && ++i == args.length)
+            throw new IllegalArgumentException("Missing formula operand");
+        double[] values = new double[args.length - i - 1];
+        for (int j = 0; j < values.length; j++) {
+            try {
+                values[j] = Double.parseDouble(args[i + j + 1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid usage of arguments");
+            }
+        }
+
+        if (job.type.equals("Mandelbrot")) {
+            job.plane = new MandelbrotSet();
+            if (values.length >= 4)
+                job.plane.setROI(values[0], values[1], values[2], values[3]);
+            if (values.length == 5)
+                job.plane.setMaxIterations((int) values[4]);
+        } else if (job.type.equals("Julia")) {
+            JuliaSet julia = new JuliaSet();
+            if (values.length >= 2)
+                julia.setConstant(values[0], values[1]);
+            if (values.length == 3)
+                julia.setMaxIterations((int) values[2]);
+            job.plane = julia;
+        } else if (job.type.equals("DeepMandelbrot")) {
+            PerturbationMandelbrot deep = new PerturbationMandelbrot();
+            if (values.length >= 3)
+                deep.setCenter(new BigDecimal(args[i + 1]), new BigDecimal(args[i + 2]), values[2]);
+            if (values.length == 4)
+                deep.setMaxIterations((int) values[3]);
+            job.plane = deep;
+        } else if (formula) {
+            FormulaPlane plane = new FormulaPlane(args[i]);
+            if (job.type.equals("Formula") && values.length >= 4)
+                plane.setROI(values[0], values[1], values[2], values[3]);
+            if (job.type.equals("JuliaFormula"))
+                plane.setConstant(values.length >= 2 ? values[0] : -0.4d, values.length >= 2 ? values[1] : 0.6d);
+            int maxItr = job.type.equals("Formula") ? 4 : 2;
+            if (values.length == maxItr + 1)
+                plane.setMaxIterations((int) values[maxItr]);
+            job.plane = plane;
+        } else
+            throw new IllegalArgumentException("Invalid fractal type provided");
+
+        job.plane.setInteriorChecks(job.interiorChecks);
+
+        // The image format defaults to the extension of the output file (or png)
+        if (job.output == null)
+            job.output = job.type.toLowerCase() + "." + (job.format == null ? "png" : job.format);
+        if (job.format == null) {
+            int dot = job.output.lastIndexOf('.');
+            job.format = dot < 0 ? "png" : job.output.substring(dot + 1).toLowerCase();
+        }
+        if (job.bandHeight > 0 && !job.format.equals("png"))
+            throw new IllegalArgumentException("Band by band rendering only supports the png format");
+        if (job.bandHeight > 0 && job.dump != null)
+            throw new IllegalArgumentException("Band by band renders cannot be dumped");
+        return job;
+    }
+
+    // Method to apply the render options of the job to a RenderContext object used to render it
+    public void configure(RenderContext context) {
+        context.setBoundaryTracing(boundaryTracing);
+        context.setSymmetry(symmetry);
+        context.setTileCache(tileCache);
+        if (simd) {
+            context.setRowKernel(RowKernel.vector());
+            if (context.getRowKernel() == null)
+                System.err.println("Warning: the SIMD kernel is not available (run with --add-modules jdk.incubator.vector), using the scalar kernel");
+        }
+    }
+
+    // Method to render the job through the given TileCache object (null to compute every pixel)
+    public void setTileCache(TileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    // Method to compute the job on the given workers (null to compute it locally)
+    public void setWorkers(List<InetSocketAddress> workers) {
+        this.workers = workers;
+    }
+
+    // Method to compute a RenderContext object of the job (configured by configure), either locally or on the workers of the job.
+    // Returns the time taken for the computation in milliseconds.
+    public long render(RenderContext context) {
+        return workers == null ? FractalRenderer.render(context) : DistributedRenderer.render(context, workers);
+    }
+
+    private static int parsePositive(String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0)
+                return n;
+        } catch (NumberFormatException e) {
+        }
+        throw new IllegalArgumentException("Invalid size " + value);
+    }
+
+    public ComplexPlane getPlane() {
+        return this.plane;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public String getOutput() {
+        return this.output;
+    }
+
+    public String getFormat() {
+        return this.format;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    // Method to get the file the computed values of the image are dumped into (null if they are not dumped)
+    public String getDump() {
+        return this.dump;
+    }
+
+    public boolean isCompressDump() {
+        return this.compressDump;
+    }
+
+    // Method to get the height of the bands the image is streamed in (0 if the image is rendered at once)
+    public int getBandHeight() {
+        return this.bandHeight;
+    }
+
+    public int getColorScheme() {
+        return this.colorScheme;
+    }
+
+    // Method to get the number of samples per side of the supersampled pixels (0 if the image is not supersampled)
+    public int getSupersample() {
+        return this.supersample;
+    }
+
+    // Method to colour the rows y0 <= y < y1 of a RenderContext object of the job into rgb (starting at offset) with the colouring scheme of the
+    // job, supersampling the edges if the job asks for it. Returns {the time taken in milliseconds, the number of supersampled pixels}.
+    public long[] paint(RenderContext context, int y0, int y1, int[] rgb, int offset) {
+        if (supersample == 0)
+            return new long[] { ColorScheme.paint(colorScheme, context, y0, y1, 1, rgb, offset), 0 };
+        long start = System.nanoTime();
+        long refined = Supersampler.paint(colorScheme, context, y0, y1, supersample, rgb, offset);
+        return new long[] { (System.nanoTime() - start) / 1000000, refined };
+    }
+}
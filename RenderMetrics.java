@@ -0,0 +1,280 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    RenderMetrics instruments the renders in two independent ways:
+      - JDK Flight Recorder events: fractals.Tile for every tile computed by an IterationCounter task, fractals.Coloring for every colouring pass and
+        fractals.Render for every finished render. They are recorded whenever a recording which enables them is running, e.g.
+            java -XX:StartFlightRecording=filename=render.jfr Fractal render Mandelbrot
+            jfr print --events fractals.Tile render.jfr
+      - Counters accumulated over all the renders (tiles, iterations, escaped and interior pixels, the time spent computing the tiles and colouring), and
+        the iterations per second, thread utilization and worker imbalance of the last render, exposed by the RenderMetricsMBean interface.
+        The counters are only collected when they are enabled, with setEnabled(true), the --metrics render option or -Dfractals.metrics=true, which
+        also registers the MBean.
+
+    When neither is enabled the instrumented tasks only check a volatile flag and whether the event is enabled once per tile, so the overhead is
+    negligible. Counting the escaped and interior pixels of a tile needs another pass over its iteration counts, so it is only done when instrumented.
+*/
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+public class RenderMetrics implements RenderMetricsMBean {
+    public static final String OBJECT_NAME = "fractals:type=RenderMetrics";
+    private static final RenderMetrics INSTANCE = new RenderMetrics();
+    private static volatile boolean collecting;
+    private static boolean registered;
+
+    static {
+        if (Boolean.getBoolean("fractals.metrics"))
+            enable();
+    }
+
+    @Name("fractals.Tile")
+    @Label("Fractal Tile")
+    @Category("Fractals")
+    @Description("A tile of pixels computed by an IterationCounter task")
+    @StackTrace(false)
+    public static class TileEvent extends Event {
+        @Label("Fractal")
+        public String fractal;
+        @Label("X")
+        public int x;
+        @Label("Y")
+        public int y;
+        @Label("Width")
+        public int width;
+        @Label("Height")
+        public int height;
+        @Label("Iterations")
+        public long iterations;
+        @Label("Escaped Pixels")
+        public long escapedPixels;
+        @Label("Interior Pixels")
+        public long interiorPixels;
+    }
+
+    @Name("fractals.Coloring")
+    @Label("Fractal Coloring")
+    @Category("Fractals")
+    @Description("The colouring of rows of a rendered view")
+    @StackTrace(false)
+    public static class ColoringEvent extends Event {
+        @Label("Scheme")
+        public int scheme;
+        @Label("Pixels")
+        public long pixels;
+    }
+
+    @Name("fractals.Render")
+    @Label("Fractal Render")
+    @Category("Fractals")
+    @Description("A finished render of a RenderContext")
+    @StackTrace(false)
+    public static class RenderEvent extends Event {
+        @Label("Fractal")
+        public String fractal;
+        @Label("Width")
+        public int width;
+        @Label("Height")
+        public int height;
+        @Label("Tiles")
+        public int tiles;
+        @Label("Iterations")
+        public long iterations;
+        @Label("Escaped Pixels")
+        public long escapedPixels;
+        @Label("Interior Pixels")
+        public long interiorPixels;
+        @Label("Wall Time")
+        @Timespan
+        public long wallTime;
+        @Label("Max Tile Time")
+        @Timespan
+        public long maxTileTime;
+        @Label("Iterations per Second")
+        public double iterationsPerSecond;
+        @Label("Thread Utilization")
+        public double threadUtilization;
+        @Label("Worker Imbalance")
+        public double workerImbalance;
+        @Label("Buffer Size")
+        @DataAmount
+        public long bufferSize;
+    }
+
+    private final LongAdder renders = new LongAdder(), tiles = new LongAdder(), iterations = new LongAdder();
+    private final LongAdder escapedPixels = new LongAdder(), interiorPixels = new LongAdder(), tileNanos = new LongAdder();
+    private final LongAdder coloredPixels = new LongAdder(), coloringNanos = new LongAdder();
+    private final LongAccumulator maxTileNanos = new LongAccumulator(Math::max, 0);
+    private volatile double lastIterationsPerSecond, lastThreadUtilization, lastWorkerImbalance;
+
+    // Method to get the metrics shared by all the renders
+    public static RenderMetrics get() {
+        return INSTANCE;
+    }
+
+    // Method to check whether the counters are collected (called for every tile, so it only reads a volatile flag)
+    public static boolean collecting() {
+        return collecting;
+    }
+
+    // Method to start collecting the counters and register the MBean
+    public static synchronized void enable() {
+        collecting = true;
+        if (registered)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (JMException e) {
+            System.err.println("Warning: could not register the MBean " + OBJECT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    // Method to record a tile computed by an IterationCounter task
+    public static void recordTile(long nanos, long iterations, long escaped, long interior) {
+        if (!collecting)
+            return;
+        INSTANCE.tiles.increment();
+        INSTANCE.tileNanos.add(nanos);
+        INSTANCE.maxTileNanos.accumulate(nanos);
+        INSTANCE.iterations.add(iterations);
+        INSTANCE.escapedPixels.add(escaped);
+        INSTANCE.interiorPixels.add(interior);
+    }
+
+    // Method to record a colouring pass of the given number of pixels
+    public static void recordColoring(long pixels, long nanos) {
+        if (!collecting)
+            return;
+        INSTANCE.coloredPixels.add(pixels);
+        INSTANCE.coloringNanos.add(nanos);
+    }
+
+    // Method to record a finished render, whose LoadReport has been finished
+    public static void recordRender(RenderContext context, LoadReport report) {
+        RenderEvent event = new RenderEvent();
+        if (event.shouldCommit()) {
+            event.fractal = context.getPlane().getClass().getName();
+            event.width = context.getWidth();
+            event.height = context.getHeight();
+            event.tiles = report.getTiles();
+            event.iterations = report.getIterations();
+            event.escapedPixels = report.getEscapedPixels();
+            event.interiorPixels = report.getInteriorPixels();
+            event.wallTime = report.getWallNanos();
+            event.maxTileTime = report.getMaxTileNanos();
+            event.iterationsPerSecond = report.getIterationsPerSecond();
+            event.threadUtilization = report.getThreadUtilization();
+            event.workerImbalance = report.getWorkerImbalance();
+            event.bufferSize = (long) context.getWidth() * context.getHeight() * (Integer.BYTES + Double.BYTES);
+            event.commit();
+        }
+        if (!collecting)
+            return;
+        INSTANCE.renders.increment();
+        INSTANCE.lastIterationsPerSecond = report.getIterationsPerSecond();
+        INSTANCE.lastThreadUtilization = report.getThreadUtilization();
+        INSTANCE.lastWorkerImbalance = report.getWorkerImbalance();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return collecting;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        if (enabled)
+            enable();
+        else
+            collecting = false;
+    }
+
+    @Override
+    public long getRenders() {
+        return renders.sum();
+    }
+
+    @Override
+    public long getTiles() {
+        return tiles.sum();
+    }
+
+    @Override
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    @Override
+    public long getEscapedPixels() {
+        return escapedPixels.sum();
+    }
+
+    @Override
+    public long getInteriorPixels() {
+        return interiorPixels.sum();
+    }
+
+    @Override
+    public long getTileMillis() {
+        return tileNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getMaxTileMillis() {
+        return maxTileNanos.get() / 1000000;
+    }
+
+    @Override
+    public double getLastIterationsPerSecond() {
+        return lastIterationsPerSecond;
+    }
+
+    @Override
+    public double getLastThreadUtilization() {
+        return lastThreadUtilization;
+    }
+
+    @Override
+    public double getLastWorkerImbalance() {
+        return lastWorkerImbalance;
+    }
+
+    @Override
+    public long getColoredPixels() {
+        return coloredPixels.sum();
+    }
+
+    @Override
+    public long getColoringMillis() {
+        return coloringNanos.sum() / 1000000;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : new LongAdder[] { renders, tiles, iterations, escapedPixels, interiorPixels, tileNanos, coloredPixels, coloringNanos })
+            counter.reset();
+        maxTileNanos.reset();
+        lastIterationsPerSecond = lastThreadUtilization = lastWorkerImbalance = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("metrics: %d renders, %d tiles (%dms, max %dms), %d iterations, %d escaped and %d interior pixels, %d pixels coloured "
+                + "in %dms; last render %.1fM iterations/s, thread utilization %.2f, worker imbalance %.2f", getRenders(), getTiles(),
+                getTileMillis(), getMaxTileMillis(), getIterations(), getEscapedPixels(), getInteriorPixels(), getColoredPixels(),
+                getColoringMillis(), getLastIterationsPerSecond() / 1e6, getLastThreadUtilization(), getLastWorkerImbalance());
+    }
+}
@@ -0,0 +1,39 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    RenderMetricsMBean is the management interface of the RenderMetrics class, which is registered in the platform MBeanServer as
+    fractals:type=RenderMetrics so that the metrics can be read with JConsole or scraped by a JMX exporter.
+*/
+
+public interface RenderMetricsMBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getRenders();
+
+    long getTiles();
+
+    long getIterations();
+
+    long getEscapedPixels();
+
+    long getInteriorPixels();
+
+    // The CPU time spent computing the tiles
+    long getTileMillis();
+
+    long getMaxTileMillis();
+
+    double getLastIterationsPerSecond();
+
+    double getLastThreadUtilization();
+
+    double getLastWorkerImbalance();
+
+    long getColoredPixels();
+
+    long getColoringMillis();
+
+    void reset();
+}
@@ -0,0 +1,148 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    RenderWorker is the worker mode of a distributed render (see DistributedRenderer). It listens for coordinators on a TCP port and computes the tiles
+    they send with the usual kernels, on the shared pool of the FractalRenderer class, so every tile is itself computed in parallel.
+
+    Usage:
+    java Fractal worker [--port PORT] [--parallelism N]
+
+    Every connection renders one job (see TileProtocol): the coordinator sends the description of the fractal, then tiles, which are computed and
+    returned one at a time in the order they were sent. Several coordinators can use the same worker at the same time.
+*/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+public class RenderWorker {
+    public static final int DEFAULT_PORT = 7070;
+
+    private final ServerSocket server;
+    private final boolean verbose;
+
+    // Creates a worker listening on the given port (0 for any free port) of the given address (null for all the addresses)
+    public RenderWorker(int port, InetAddress address, boolean verbose) throws IOException {
+        this.server = new ServerSocket(port, 50, address);
+        this.verbose = verbose;
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    // Method to start accepting the coordinators on a daemon thread
+    public RenderWorker start() {
+        Thread acceptor = new Thread(this::serve, "RenderWorker-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    // Method to accept the coordinators until the server socket is closed
+    public void serve() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                Thread connection = new Thread(() -> handle(socket), "RenderWorker-" + socket.getRemoteSocketAddress());
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                if (!server.isClosed())
+                    System.err.println("Warning: " + e.getMessage());
+            }
+        }
+    }
+
+    // Method to compute the tiles of a coordinator
+    private void handle(Socket socket) {
+        long start = System.currentTimeMillis();
+        int tiles = 0;
+        // Closing the streams closes the socket
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            if (in.readByte() != TileProtocol.JOB)
+                throw new IOException("Expected a job");
+            RenderContext context;
+            try {
+                context = TileProtocol.readJob(in, 0, 0);
+            } catch (IOException | RuntimeException e) {
+                out.writeByte(TileProtocol.ERROR);
+                out.writeUTF(String.valueOf(e.getMessage()));
+                out.flush();
+                return;
+            }
+            for (byte type = in.readByte(); type == TileProtocol.TILE; type = in.readByte()) {
+                int id = in.readInt(), x = in.readInt(), y = in.readInt(), width = in.readInt(), height = in.readInt();
+                // The buffers of the previous tile are reused unless the size of the tile changes
+                if (context.getWidth() != width || context.getHeight() != height) {
+                    RenderContext tile = new RenderContext(context.getPlane(), x, y, width, height);
+                    tile.setBoundaryTracing(context.isBoundaryTracing());
+                    tile.setRowKernel(context.getRowKernel());
+                    context = tile;
+                } else
+                    context.moveTo(x, y);
+                long begin = System.nanoTime();
+                FractalRenderer.render(context);
+                TileProtocol.writeResult(out, id, context, System.nanoTime() - begin, context.getReport().getIterations());
+                // Send the result right away unless the next tile is already waiting
+                if (in.available() == 0)
+                    out.flush();
+                tiles++;
+            }
+            out.flush();
+        } catch (EOFException e) {
+            System.err.printf("Warning: the coordinator %s closed the connection\n", socket.getRemoteSocketAddress());
+        } catch (IOException e) {
+            System.err.printf("Warning: connection with %s failed: %s\n", socket.getRemoteSocketAddress(), e.getMessage());
+        }
+        if (verbose)
+            System.out.printf("%s: %d tiles in %dms\n", socket.getRemoteSocketAddress(), tiles, System.currentTimeMillis() - start);
+    }
+
+    // Method to stop accepting the coordinators
+    public void close() throws IOException {
+        server.close();
+    }
+
+    // Method to print an error message followed by the usage of the worker mode
+    private static void printUsage(String errMessage) {
+        System.out.printf("\u001B[31mError: %s.\033[0m\n", errMessage);
+        System.out.println("Usage: java Fractal worker [--port PORT] [--parallelism N]\n");
+        System.out.println("Computes the tiles of the distributed renders of the coordinators (java Fractal render --workers HOST:PORT,... ).");
+        System.out.println("The port defaults to " + DEFAULT_PORT + " and the parallelism to the number of processors.");
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int port = DEFAULT_PORT;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--port"))
+                    port = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--parallelism"))
+                    FractalRenderer.setParallelism(Integer.parseInt(args[++i]));
+                else
+                    throw new IllegalArgumentException();
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            printUsage("Invalid usage of arguments");
+            System.exit(0);
+        }
+        try {
+            RenderWorker worker = new RenderWorker(port, null, true);
+            System.out.printf("Worker listening on port %d (parallelism %d)\n", worker.getPort(), FractalRenderer.getParallelism());
+            worker.serve();
+        } catch (IOException e) {
+            printUsage("Could not listen on the port " + port + ": " + e.getMessage());
+            System.exit(0);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    RowKernel is the interface of the kernels which compute a whole row of pixels of a RenderContext at once, as an alternative to calling the scalar
+    countIterations method of the ComplexPlane object for each pixel.
+
+    The SIMD kernel (VectorKernel) uses the incubating Java Vector API, so it lives in the vector directory and is compiled and loaded separately:
+        javac --add-modules jdk.incubator.vector -cp . -d . vector/VectorKernel.java
+        java --add-modules jdk.incubator.vector Fractal render --simd ...
+    When the class or the jdk.incubator.vector module is not available, vector() returns null and the scalar kernel is used instead.
+*/
+
+public interface RowKernel {
+    // Method to count the iterations of the pixels x0 <= x < x1 of the row y of the given RenderContext object, storing both the number of iterations
+    // and the potential values in its buffers. Returns the total number of iterations, or -1 if the kernel does not support the ComplexPlane object.
+    long countRow(RenderContext context, int x0, int x1, int y);
+
+    // Method to get the SIMD kernel, or null if it is not available in this JVM
+    static RowKernel vector() {
+        return VectorKernelHolder.KERNEL;
+    }
+
+    // Loads the SIMD kernel only once, when it is first requested
+    class VectorKernelHolder {
+        private static final RowKernel KERNEL = load();
+
+        private static RowKernel load() {
+            try {
+                return (RowKernel) Class.forName("VectorKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    StreamingRenderer renders an image in horizontal bands of rows and streams the coloured bands into a PngStreamWriter as soon as they are done, so the
+    peak memory depends on the height of the bands and not on the size of the image (e.g. print size renders of 40000 x 40000 pixels).
+
+    The bands are computed (and coloured) by the calling thread and encoded by a separate encoder thread, so the computation of band N + 1 overlaps the
+    encoding of band N. The two stages are connected by a bounded queue and the band buffers are recycled through a second queue, so there are never more
+    than BUFFERS bands in memory.
+
+    The gradient colouring scheme (and the edge detection of the supersampling) needs the row above each pixel, so every band except the first one
+    computes one extra row above it. The edge detection of the supersampling also needs the row below each pixel, so when the image is supersampled every
+    band except the last one computes one extra row below it as well, and the bands give exactly the same image as a render of the whole canvas.
+
+    The image is written into a temporary file which is renamed once it is complete, so a failed render never leaves a truncated image behind.
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class StreamingRenderer {
+    // The number of band buffers shared by the compute and the encoder stages
+    private static final int BUFFERS = 3;
+
+    // A band of coloured rows waiting to be encoded
+    private static class Band {
+        final int[] rgb;
+        int rows;
+
+        Band(int size) {
+            rgb = new int[size];
+        }
+    }
+
+    // Marks the end of the image in the queue of the encoder
+    private static final Band END = new Band(0);
+
+    // Method to render a job band by band into its output file. Returns the times taken to compute and to colour the bands in milliseconds and the
+    // number of supersampled pixels ({iterations, colouring, supersampled}).
+    public static long[] render(RenderJob job) throws IOException {
+        ComplexPlane plane = job.getPlane();
+        int width = job.getWidth(), height = job.getHeight(), bandHeight = Math.min(job.getBandHeight(), height);
+        plane.setCanvasSize(width, height);
+
+        BlockingQueue<Band> free = new ArrayBlockingQueue<>(BUFFERS), full = new ArrayBlockingQueue<>(BUFFERS + 1);
+        for (int i = 0; i < BUFFERS; i++)
+            free.add(new Band(width * bandHeight));
+
+        // The encoder stage. After an error it keeps recycling the bands, so the compute stage can finish and report it, and it always closes the file.
+        AtomicReference<IOException> error = new AtomicReference<>();
+        Path path = Paths.get(job.getOutput()), partial = Paths.get(path + ".part");
+        OutputStream file = new BufferedOutputStream(Files.newOutputStream(partial));
+        PngStreamWriter writer;
+        try {
+            writer = new PngStreamWriter(file, width, height);
+        } catch (IOException e) {
+            file.close();
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Thread encoder = new Thread(() -> {
+            try {
+                for (Band band = full.take(); band != END; band = full.take()) {
+                    try {
+                        if (error.get() == null)
+                            writer.writeRows(band.rgb, 0, band.rows);
+                    } catch (IOException e) {
+                        error.compareAndSet(null, e);
+                    }
+                    free.put(band);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    error.compareAndSet(null, e);
+                }
+            }
+        }, "PngStreamWriter");
+        encoder.start();
+
+        // The compute stage
+        long iterationTime = 0, colorTime = 0, refined = 0;
+        boolean complete = false;
+        try {
+            try {
+                RenderContext context = null;
+                for (int top = 0; top < height && error.get() == null; top += bandHeight) {
+                    int rows = Math.min(bandHeight, height - top), above = top > 0 ? 1 : 0;
+                    int below = job.getSupersample() > 0 && top + rows < height ? 1 : 0;
+                    // The buffers of the previous band are reused unless the number of rows changes
+                    if (context == null || context.getHeight() != above + rows + below) {
+                        context = new RenderContext(plane, 0, top - above, width, above + rows + below);
+                        job.configure(context);
+                    } else
+                        context.moveTo(0, top - above);
+                    iterationTime += job.render(context);
+
+                    // Only the rows of the band are coloured, the extra rows are only their neighbours
+                    Band band = free.take();
+                    long[] coloring = job.paint(context, above, above + rows, band.rgb, 0);
+                    colorTime += coloring[0];
+                    refined += coloring[1];
+                    band.rows = rows;
+                    full.put(band);
+                }
+            } finally {
+                // The encoder stops even when the compute stage fails (the queue always has room for END, since there are only BUFFERS bands)
+                full.add(END);
+                encoder.join();
+            }
+            if (error.get() != null)
+                throw error.get();
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            complete = true;
+        } catch (InterruptedException e) {
+            encoder.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IOException("The render was interrupted", e);
+        } finally {
+            if (!complete)
+                Files.deleteIfExists(partial);
+        }
+        return new long[] { iterationTime, colorTime, refined };
+    }
+}
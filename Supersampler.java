@@ -0,0 +1,120 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    Supersampler is a derived class from RecursiveAction which colours rows of a RenderContext into an int array of ARGB pixels with adaptive
+    supersampling: every pixel is coloured from its own sample (the value of the RenderContext), and only the pixels on an edge are sampled again, at
+    N x N jittered points spread over the pixel, and take the average colour of their samples.
+
+    A pixel is on an edge when the colour of its sample differs from the colour of one of its four neighbours by more than THRESHOLD in a channel, or
+    when one of them is inside the set and the other one is not. The uniform regions (the inside of the set and the smooth gradients far from it) have
+    no edges, so only a small fraction of the pixels is sampled again while the image gets the quality of a full N x N supersample where it matters.
+    The pixels are not averaged with their neighbours, so the gradient scheme is coloured without its blurring anti-aliasing.
+
+    The jitter of a pixel only depends on its coordinates on the canvas, so a pixel gets the same colour whatever band or region it is rendered in, as
+    long as its four neighbours are in the RenderContext (StreamingRenderer computes an extra row above and below each band for them). The neighbours
+    outside of the RenderContext (at the borders of the canvas) are ignored.
+
+    The rows are split into halves until a task has at most MAX_ROWS rows, so the edge pixels (whose cost is N x N times the cost of a pixel) are
+    spread over the threads of the pool.
+*/
+
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Supersampler extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    // The maximum number of rows coloured by one task
+    private static final int MAX_ROWS = 4;
+    // The difference of a colour channel above which two neighbours are on an edge
+    private static final int THRESHOLD = 16;
+    // The range of the number of samples per side of a pixel
+    public static final int MIN_SAMPLES = 2, MAX_SAMPLES = 8;
+
+    private RenderContext context;
+    private int scheme, y0, y1, samples, offset;
+    private int[] rgb;
+    private transient LongAdder refined;
+
+    private Supersampler(int scheme, RenderContext context, int y0, int y1, int samples, int[] rgb, int offset, LongAdder refined) {
+        this.scheme = scheme;
+        this.context = context;
+        this.y0 = y0;
+        this.y1 = y1;
+        this.samples = samples;
+        this.rgb = rgb;
+        this.offset = offset;
+        this.refined = refined;
+    }
+
+    // Method to colour the rows y0 <= y < y1 of the given RenderContext object into rgb (in row major order, starting at offset) in parallel,
+    // sampling the edge pixels again with samples x samples jittered samples. Returns the number of pixels sampled again.
+    public static long paint(int scheme, RenderContext context, int y0, int y1, int samples, int[] rgb, int offset) {
+        if (samples < MIN_SAMPLES || samples > MAX_SAMPLES)
+            throw new IllegalArgumentException("Invalid number of samples " + samples);
+        LongAdder refined = new LongAdder();
+        FractalRenderer.getPool().invoke(new Supersampler(scheme, context, y0, y1, samples, rgb, offset, refined));
+        return refined.sum();
+    }
+
+    @Override
+    protected void compute() {
+        int width = context.getWidth();
+        if (y1 - y0 > MAX_ROWS) {
+            int middle = (y0 + y1) / 2;
+            invokeAll(new Supersampler(scheme, context, y0, middle, samples, rgb, offset, refined),
+                    new Supersampler(scheme, context, middle, y1, samples, rgb, offset + (middle - y0) * width, refined));
+            return;
+        }
+
+        int height = context.getHeight(), maxItr = context.getPlane().getMaxIterations();
+        long count = 0;
+        for (int y = y0, row = offset; y < y1; y++, row += width) {
+            for (int x = 0; x < width; x++) {
+                int color = sample(x, y, maxItr);
+                boolean edge = (x > 0 && isEdge(color, x, y, x - 1, y, maxItr)) || (x + 1 < width && isEdge(color, x, y, x + 1, y, maxItr))
+                        || (y > 0 && isEdge(color, x, y, x, y - 1, maxItr)) || (y + 1 < height && isEdge(color, x, y, x, y + 1, maxItr));
+                if (edge) {
+                    color = supersample(x, y, maxItr);
+                    count++;
+                }
+                rgb[row + x] = color;
+            }
+        }
+        refined.add(count);
+    }
+
+    // Method to get the colour of the sample of the pixel (x, y)
+    private int sample(int x, int y, int maxItr) {
+        return ColorScheme.getSampleRGB(scheme, context.getIterations(x, y), context.getSmooth(x, y), maxItr);
+    }
+
+    // Method to check whether the pixel (x, y) of the given colour and its neighbour (nx, ny) are on an edge
+    private boolean isEdge(int color, int x, int y, int nx, int ny, int maxItr) {
+        if ((context.getIterations(x, y) >= maxItr) != (context.getIterations(nx, ny) >= maxItr))
+            return true;
+        int other = sample(nx, ny, maxItr);
+        return Math.abs((color >> 16 & 0xFF) - (other >> 16 & 0xFF)) > THRESHOLD || Math.abs((color >> 8 & 0xFF) - (other >> 8 & 0xFF)) > THRESHOLD
+                || Math.abs((color & 0xFF) - (other & 0xFF)) > THRESHOLD;
+    }
+
+    // Method to get the average colour of samples x samples jittered samples of the pixel (x, y), one in each cell of a grid over the pixel
+    private int supersample(int x, int y, int maxItr) {
+        ComplexPlane plane = context.getPlane();
+        double left = context.getLeft() + x - 0.5, top = context.getTop() + y - 0.5;
+        SplittableRandom jitter = new SplittableRandom((long) (context.getTop() + y) << 32 ^ (context.getLeft() + x));
+        double[] smooth = new double[1];
+        int red = 0, green = 0, blue = 0;
+        for (int j = 0; j < samples; j++) {
+            for (int i = 0; i < samples; i++) {
+                int count = plane.countPixel(left + (i + jitter.nextDouble()) / samples, top + (j + jitter.nextDouble()) / samples, smooth, 0);
+                int color = ColorScheme.getSampleRGB(scheme, count, smooth[0], maxItr);
+                red += color >> 16 & 0xFF;
+                green += color >> 8 & 0xFF;
+                blue += color & 0xFF;
+            }
+        }
+        int n = samples * samples;
+        return 0xFF000000 | (red + n / 2) / n << 16 | (green + n / 2) / n << 8 | (blue + n / 2) / n;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    SymmetricRenderer is a derived class from RecursiveAction which renders a RenderContext of a symmetric fractal (see ComplexPlane.getSymmetry) by
+    computing only the unique part of the view and mirroring its values into the rest:
+      - the Mandelbrot set is symmetric about the real axis: the rows below the axis whose mirror image is in the view are copied from it,
+      - the filled Julia sets are symmetric about 0: the pixels below the axis whose image by the rotation of 180 degrees is in the view are copied from
+        it (the columns are mirrored about the imaginary axis as well).
+    The rest of the view (the part of a partly symmetric view which has no mirror image in it) is computed by IterationCounter tasks, so the
+    default -1..1 views cost about half of a full render.
+
+    A pixel is only mirrored when the point it is mirrored from is a pixel of the grid, i.e. when the pixels line up with the axis: a row (or column)
+    is paired with the row whose complex number is the opposite of its own up to TOLERANCE of a pixel. The views whose grid is offset from the axis by
+    a fraction of a pixel are computed pixel by pixel. The kernels of these fractals are exactly symmetric, so a mirrored pixel has exactly the values
+    of the point it mirrors, which differs from the pixel's own complex number by the rounding of the mapping only (most of the rows of a view map to
+    exactly opposite numbers, the others are a few ulps away).
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+public class SymmetricRenderer extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    // The largest distance (in pixels) between the mirror image of a row or column and the row or column it is paired with
+    private static final double TOLERANCE = 1e-6;
+
+    private RenderContext context;
+    private transient LoadReport report;
+
+    public SymmetricRenderer(RenderContext context, LoadReport report) {
+        this.context = context;
+        this.report = report;
+    }
+
+    // Method to pair the rows (or columns) of a RenderContext object with their mirror images, given the coordinates of the first one on the canvas.
+    // Returns, for every row below the axis (or every column if both sides are mirrored), the row it mirrors, or -1.
+    private static int[] pair(ComplexPlane plane, int first, int count, boolean rows, boolean bothSides) {
+        int[] mirrors = new int[count];
+        double scale = plane.getPixelSize();
+        for (int i = 0; i < count; i++) {
+            mirrors[i] = -1;
+            // The rows go down the imaginary axis and the columns go up the real axis
+            double value = rows ? plane.getImaginary(first + i) : plane.getReal(first + i);
+            if (value == 0 || (!bothSides && value > 0)) {
+                // A column on the imaginary axis is its own mirror image
+                if (bothSides)
+                    mirrors[i] = i;
+                continue;
+            }
+            long mirror = Math.round(rows ? i + 2 * value / scale : i - 2 * value / scale);
+            if (mirror < 0 || mirror >= count || (mirror == i && !bothSides))
+                continue;
+            double image = rows ? plane.getImaginary(first + mirror) : plane.getReal(first + mirror);
+            if (Math.abs(image + value) <= TOLERANCE * scale)
+                mirrors[i] = (int) mirror;
+        }
+        return mirrors;
+    }
+
+    @Override
+    protected void compute() {
+        ComplexPlane plane = context.getPlane();
+        int width = context.getWidth(), height = context.getHeight();
+        int[] rows = pair(plane, context.getTop(), height, true, false), columns;
+        if (plane.getSymmetry() == ComplexPlane.ORIGIN)
+            columns = pair(plane, context.getLeft(), width, false, true);
+        else {
+            columns = new int[width];
+            for (int x = 0; x < width; x++)
+                columns[x] = x;
+        }
+
+        // The rows which are not mirrored are computed, and so are the columns of the mirrored rows whose mirror image is not in the view
+        List<IterationCounter> tasks = new ArrayList<>();
+        for (int y = 0, end; y < height; y = end) {
+            boolean mirrored = rows[y] >= 0;
+            for (end = y + 1; end < height && (rows[end] >= 0) == mirrored;)
+                end++;
+            if (!mirrored) {
+                tasks.add(new IterationCounter(context, 0, y, width, end - y, report));
+                continue;
+            }
+            for (int x = 0, right; x < width; x = right) {
+                for (right = x + 1; right < width && (columns[right] >= 0) == (columns[x] >= 0);)
+                    right++;
+                if (columns[x] < 0)
+                    tasks.add(new IterationCounter(context, x, y, right - x, end - y, report));
+            }
+        }
+        invokeAll(tasks);
+        if (context.isCancelled())
+            return;
+
+        // Mirror the computed values into the other pixels
+        long start = LoadReport.now(), mirrored = 0;
+        int[] iterationsCount = context.getIterationsCount();
+        double[] smoothColors = context.getSmoothColors();
+        for (int y = 0; y < height; y++) {
+            if (rows[y] < 0)
+                continue;
+            int row = context.index(0, y), source = context.index(0, rows[y]);
+            for (int x = 0; x < width; x++) {
+                if (columns[x] < 0)
+                    continue;
+                iterationsCount[row + x] = iterationsCount[source + columns[x]];
+                smoothColors[row + x] = smoothColors[source + columns[x]];
+                mirrored++;
+            }
+        }
+        report.addComputed((long) width * height - mirrored);
+        report.addSkipped(mirrored);
+        report.addTile(LoadReport.now() - start);
+    }
+}
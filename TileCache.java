@@ -0,0 +1,192 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    TileCache stores the computed iteration counts and potential values of square tiles of TILE_SIZE x TILE_SIZE pixels, so that the views which are
+    rendered again (e.g. the same job rendered twice, or the same region after a pan) do not iterate the same pixels again.
+
+    The tiles are laid out on the pixel grid of the mapping of a ComplexPlane object: the tile (tx, ty) covers the pixels tx * TILE_SIZE <= x <
+    (tx + 1) * TILE_SIZE and ty * TILE_SIZE <= y < (ty + 1) * TILE_SIZE of the mapping, and it is looked up by the mapping key of the ComplexPlane
+    object (which identifies the fractal type, the Julia constant, maxItr and the exact mapping from the pixels to the complex numbers, i.e. the ROI and
+    the resolution) and its tile coordinates.
+
+    The cache has two tiers:
+      - An in-heap tier which holds the most recently used tiles up to a given number of bytes, evicting the least recently used ones.
+      - An optional on-disk tier: every computed tile is also written into a file of the given directory, and the tiles missing from the in-heap tier are
+        read back from the memory-mapped files. The directory is kept between runs, so the tiles survive restarts. The files are not bounded in size.
+
+    The numbers of hits in each tier, misses and evictions are counted so that the cache can be sized.
+*/
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TileCache {
+    // The width and height of a tile in pixels
+    public static final int TILE_SIZE = 64;
+    // The number of bytes taken by the buffers of a tile
+    private static final long TILE_BYTES = (long) TILE_SIZE * TILE_SIZE * (Integer.BYTES + Double.BYTES);
+    // The first bytes of a tile file
+    private static final int MAGIC = 0x46544331;
+
+    // The buffers of a tile, in row major order
+    public static class Tile {
+        public final int[] iterationsCount = new int[TILE_SIZE * TILE_SIZE];
+        public final double[] smoothColors = new double[TILE_SIZE * TILE_SIZE];
+    }
+
+    private final long capacity;
+    private final Path directory;
+    // The in-heap tier, in access order
+    private final LinkedHashMap<String, Tile> tiles;
+    private final LongAdder memoryHits = new LongAdder(), diskHits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    // Creates a cache which keeps up to capacity bytes of tiles in the heap and, unless directory is null, the files of the tiles in directory
+    public TileCache(long capacity, Path directory) throws IOException {
+        this.capacity = capacity;
+        this.directory = directory;
+        if (directory != null)
+            Files.createDirectories(directory);
+        this.tiles = new LinkedHashMap<String, Tile>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tile> eldest) {
+                if (size() * TILE_BYTES <= TileCache.this.capacity)
+                    return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    // Method to get the key of the tile (tx, ty) of the mapping of the given ComplexPlane object
+    public static String key(ComplexPlane plane, int tx, int ty) {
+        return plane.getMappingKey() + "#" + tx + "," + ty;
+    }
+
+    // Method to get the tile with the given key, or null if it is in neither of the tiers
+    public Tile get(String key) {
+        Tile tile;
+        synchronized (tiles) {
+            tile = tiles.get(key);
+        }
+        if (tile != null) {
+            memoryHits.increment();
+            return tile;
+        }
+        tile = directory == null ? null : read(key);
+        if (tile == null) {
+            misses.increment();
+            return null;
+        }
+        diskHits.increment();
+        synchronized (tiles) {
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    // Method to store a computed tile in the cache
+    public void put(String key, Tile tile) {
+        synchronized (tiles) {
+            tiles.put(key, tile);
+        }
+        if (directory != null)
+            write(key, tile);
+    }
+
+    // Method to get the file of the tile with the given key
+    private Path file(String key) {
+        return directory.resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + ".tile");
+    }
+
+    // Method to read a tile from its memory-mapped file, or null if there is no valid file for the key
+    private Tile read(String key) {
+        Path path = file(key);
+        if (!Files.isRegularFile(path))
+            return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 8)
+                return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            // The length of the key is only trusted once it matches the size of the file, so a foreign file cannot make it allocate a huge array
+            int length = buffer.getInt(4);
+            if (buffer.getInt(0) != MAGIC || length < 0 || size != 8 + length + TILE_BYTES)
+                return null;
+            byte[] stored = new byte[length];
+            buffer.position(8);
+            buffer.get(stored);
+            // A different key whose file name collides is a miss
+            if (!key.equals(new String(stored, StandardCharsets.UTF_8)))
+                return null;
+            Tile tile = new Tile();
+            buffer.asIntBuffer().get(tile.iterationsCount);
+            buffer.position(buffer.position() + Integer.BYTES * tile.iterationsCount.length);
+            buffer.asDoubleBuffer().get(tile.smoothColors);
+            return tile;
+        } catch (IOException | RuntimeException e) {
+            // A damaged file is recomputed
+            return null;
+        }
+    }
+
+    // Method to write a tile into its memory-mapped file (through a temporary file, so a file is never read while it is being written)
+    private void write(String key, Tile tile) {
+        byte[] stored = key.getBytes(StandardCharsets.UTF_8);
+        Path path = file(key), temporary = path.resolveSibling(path.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8 + stored.length + TILE_BYTES);
+                buffer.putInt(MAGIC).putInt(stored.length).put(stored);
+                buffer.asIntBuffer().put(tile.iterationsCount);
+                buffer.position(buffer.position() + Integer.BYTES * tile.iterationsCount.length);
+                buffer.asDoubleBuffer().put(tile.smoothColors);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The on-disk tier is only an optimization, so the tile just stays in the heap
+            System.err.println("Warning: could not write the tile file " + path + ": " + e.getMessage());
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Method to get the number of bytes taken by the tiles in the heap
+    public long getMemoryUsed() {
+        synchronized (tiles) {
+            return tiles.size() * TILE_BYTES;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("tile cache: %d memory hits, %d disk hits, %d misses, %d evictions, %.1f/%.1f MB in the heap", getMemoryHits(),
+                getDiskHits(), getMisses(), getEvictions(), getMemoryUsed() / 1048576d, capacity / 1048576d);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    TileLoadGenerator is a load generator for the TileServer. A number of clients request random tiles of a fractal at the same time and the latency of
+    every request is recorded, so the percentiles of the tile latency (p50, p90, p99 and the maximum) and the throughput of the server can be reported.
+
+    Usage:
+    java Fractal loadtest [--clients N] [--requests N] [--max-zoom Z] [--seed SEED] URL
+    where URL is the base URL of the tiles of a fractal, e.g. http://localhost:8080/mandelbrot (it may have a query string, e.g. ?maxitr=500).
+
+    The zoom level of every request is chosen uniformly between 0 and Z, and the tile uniformly among the tiles of the zoom level, so the tiles of the
+    low zoom levels are requested many times (by several clients at the same time), like the first views of a map shown by many users. The random
+    tiles only depend on the seed, so two runs request exactly the same tiles.
+*/
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TileLoadGenerator {
+    // Method to print an error message followed by the usage of the load generator
+    private static void printUsage(String errMessage) {
+        System.out.printf("\u001B[31mError: %s.\033[0m\n", errMessage);
+        System.out.println("Usage: java Fractal loadtest [--clients N] [--requests N] [--max-zoom Z] [--seed SEED] URL\n");
+        System.out.println("Requests random tiles of the zoom levels 0 to Z (default 4) from URL (e.g. http://localhost:8080/mandelbrot) with N clients");
+        System.out.println("(default 16) at the same time, and reports the percentiles of the tile latency. The number of requests defaults to 500.");
+    }
+
+    public static void main(String[] args) {
+        int clients = 16, requests = 500, maxZoom = 4;
+        long seed = 1;
+        String url = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].startsWith("--")) {
+                    if (url != null)
+                        throw new IllegalArgumentException();
+                    url = args[i];
+                    continue;
+                }
+                long value = Long.parseLong(args[++i]);
+                if (args[i - 1].equals("--seed")) {
+                    seed = value;
+                    continue;
+                }
+                if (args[i - 1].equals("--max-zoom") && value >= 0 && value <= 30)
+                    maxZoom = (int) value;
+                else if (value <= 0 || value > Integer.MAX_VALUE)
+                    throw new IllegalArgumentException();
+                else if (args[i - 1].equals("--clients"))
+                    clients = (int) value;
+                else if (args[i - 1].equals("--requests"))
+                    requests = (int) value;
+                else
+                    throw new IllegalArgumentException();
+            }
+            if (url == null)
+                throw new IllegalArgumentException();
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            printUsage("Invalid usage of arguments");
+            System.exit(0);
+        }
+
+        int query = url.indexOf('?');
+        String parameters = query < 0 ? "" : url.substring(query), base = (query < 0 ? url : url.substring(0, query)).replaceAll("/+$", "");
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+        // The latencies of the requests in nanoseconds, in the order they were sent
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger(), errors = new AtomicInteger();
+        long[] bytes = new long[clients];
+        ExecutorService executor = TileServer.newThreadPerTaskExecutor("TileLoadGenerator");
+        List<Future<?>> futures = new ArrayList<>();
+        long tileSeed = seed;
+        int zoomLevels = maxZoom + 1;
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            futures.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < latencies.length; i = next.getAndIncrement()) {
+                    // The tile of a request only depends on the seed and the number of the request
+                    Random random = new Random(tileSeed * 1000003 + i);
+                    int z = random.nextInt(zoomLevels);
+                    String tile = String.format("%s/%d/%d/%d.png%s", base, z, random.nextInt(1 << z), random.nextInt(1 << z), parameters);
+                    long begin = System.nanoTime();
+                    try {
+                        HttpResponse<byte[]> response = http.send(HttpRequest.newBuilder(URI.create(tile)).build(),
+                                HttpResponse.BodyHandlers.ofByteArray());
+                        if (response.statusCode() != 200)
+                            errors.incrementAndGet();
+                        bytes[client] += response.body().length;
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[i] = System.nanoTime() - begin;
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException | InterruptedException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+        long time = System.nanoTime() - start;
+        executor.shutdown();
+
+        Arrays.sort(latencies);
+        System.out.printf("%d requests by %d clients in %dms (%.1f tiles/s, %.1f MB), %d errors\n", requests, clients, time / 1000000,
+                requests * 1e9 / time, Arrays.stream(bytes).sum() / 1048576d, errors.get());
+        System.out.printf("latency p50 %.1fms, p90 %.1fms, p99 %.1fms, max %.1fms\n", percentile(latencies, 50), percentile(latencies, 90),
+                percentile(latencies, 99), latencies[latencies.length - 1] / 1e6);
+        System.exit(0);
+    }
+
+    // Method to get the given percentile of the sorted latencies in milliseconds (nearest rank)
+    private static double percentile(long[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
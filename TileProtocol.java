@@ -0,0 +1,169 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    TileProtocol is the binary wire format spoken between the coordinator of a distributed render (DistributedRenderer) and its workers (RenderWorker).
+    All the numbers are big endian (DataOutputStream) and the strings are modified UTF-8.
+
+    Coordinator -> worker
+      JOB     'J', MAGIC (int), the type of the fractal (string), the canvas size (2 ints), maxItr (int), flags (byte: 1 interior checks,
+              2 boundary tracing, 4 SIMD kernel), followed by
+                Mandelbrot:      the ROI (4 doubles)
+                Julia:           the ROI (4 doubles) and the constant (2 doubles)
+                DeepMandelbrot:  the centre (2 strings with all the digits of the BigDecimals) and the radius (double)
+                Formula:         the formula (string), the ROI (4 doubles), whether it has a constant (boolean) and the constant (2 doubles) if it has
+      TILE    'T', the id of the tile and its rectangle {x, y, width, height} on the mapping (5 ints)
+      END     'E', the render is done and the connection is closed
+
+    Worker -> coordinator
+      RESULT  'R', the id of the tile (int), the time taken to compute it in nanoseconds and its iterations (2 longs), the number of bytes of every
+              iteration count (byte: 1 if maxItr < 256, 2 if maxItr < 65536 and 4 otherwise), the iteration counts of the pixels in row major order,
+              then the potential values (doubles) of the pixels which escaped only. The pixels which reached maxItr are received with a potential value
+              of 0, which the colouring schemes never read.
+      ERROR   'X', a message (string), e.g. when the worker does not know the type of the fractal
+
+    The worker builds the ComplexPlane object from the same values the coordinator built its own from (the ROI and the canvas size), so both map the
+    pixels to exactly the same complex numbers and the tiles are identical to the ones computed locally.
+*/
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+public class TileProtocol {
+    public static final int MAGIC = 0x46524354;
+    public static final byte JOB = 'J', TILE = 'T', END = 'E', RESULT = 'R', ERROR = 'X';
+    private static final int INTERIOR_CHECKS = 1, BOUNDARY_TRACING = 2, SIMD = 4;
+
+    // Method to write the JOB message of the given RenderContext object
+    public static void writeJob(DataOutputStream out, RenderContext context) throws IOException {
+        ComplexPlane plane = context.getPlane();
+        out.writeByte(JOB);
+        out.writeInt(MAGIC);
+        out.writeUTF(plane instanceof PerturbationMandelbrot ? "DeepMandelbrot" : plane instanceof JuliaSet ? "Julia"
+                : plane instanceof FormulaPlane ? "Formula" : "Mandelbrot");
+        out.writeInt(plane.getWidth());
+        out.writeInt(plane.getHeight());
+        out.writeInt(plane.getMaxIterations());
+        out.writeByte((plane.isInteriorChecks() ? INTERIOR_CHECKS : 0) | (context.isBoundaryTracing() ? BOUNDARY_TRACING : 0)
+                | (context.getRowKernel() != null ? SIMD : 0));
+        if (plane instanceof PerturbationMandelbrot) {
+            PerturbationMandelbrot deep = (PerturbationMandelbrot) plane;
+            out.writeUTF(deep.getCenterReal().toString());
+            out.writeUTF(deep.getCenterImaginary().toString());
+            out.writeDouble(deep.getRadius());
+            return;
+        }
+        if (plane instanceof FormulaPlane)
+            out.writeUTF(((FormulaPlane) plane).getFormula().toString());
+        for (double value : plane.getROI())
+            out.writeDouble(value);
+        if (plane instanceof JuliaSet) {
+            Complex constant = ((JuliaSet) plane).getConstant();
+            out.writeDouble(constant.getReal());
+            out.writeDouble(constant.getImaginary());
+        }
+        if (plane instanceof FormulaPlane) {
+            Complex constant = ((FormulaPlane) plane).getConstant();
+            out.writeBoolean(constant != null);
+            if (constant != null) {
+                out.writeDouble(constant.getReal());
+                out.writeDouble(constant.getImaginary());
+            }
+        }
+    }
+
+    // Method to read the JOB message (after its type byte) into a RenderContext object for the tiles of the job, with the size of the given tile
+    public static RenderContext readJob(DataInputStream in, int tileWidth, int tileHeight) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a tile protocol stream");
+        String type = in.readUTF();
+        int width = in.readInt(), height = in.readInt(), maxItr = in.readInt(), flags = in.readByte();
+        ComplexPlane plane;
+        if (type.equals("DeepMandelbrot"))
+            plane = new PerturbationMandelbrot(new BigDecimal(in.readUTF()), new BigDecimal(in.readUTF()), in.readDouble());
+        else if (type.equals("Mandelbrot") || type.equals("Julia")) {
+            plane = type.equals("Julia") ? new JuliaSet() : new MandelbrotSet();
+            plane.setROI(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            if (plane instanceof JuliaSet)
+                ((JuliaSet) plane).setConstant(in.readDouble(), in.readDouble());
+        } else if (type.equals("Formula")) {
+            FormulaPlane formula;
+            try {
+                formula = new FormulaPlane(in.readUTF());
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+            formula.setROI(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            if (in.readBoolean())
+                formula.setConstant(in.readDouble(), in.readDouble());
+            plane = formula;
+        } else
+            throw new IOException("Unknown fractal type " + type);
+        plane.setMaxIterations(maxItr);
+        plane.setInteriorChecks((flags & INTERIOR_CHECKS) != 0);
+        plane.setCanvasSize(width, height);
+
+        RenderContext context = new RenderContext(plane, 0, 0, tileWidth, tileHeight);
+        context.setBoundaryTracing((flags & BOUNDARY_TRACING) != 0);
+        if ((flags & SIMD) != 0)
+            context.setRowKernel(RowKernel.vector());
+        return context;
+    }
+
+    // Method to write a TILE message
+    public static void writeTile(DataOutputStream out, int id, int x, int y, int width, int height) throws IOException {
+        out.writeByte(TILE);
+        out.writeInt(id);
+        out.writeInt(x);
+        out.writeInt(y);
+        out.writeInt(width);
+        out.writeInt(height);
+    }
+
+    // Method to write the RESULT message of a tile computed into the whole RenderContext object
+    public static void writeResult(DataOutputStream out, int id, RenderContext tile, long nanos, long iterations) throws IOException {
+        int maxItr = tile.getPlane().getMaxIterations(), bytes = countBytes(maxItr), pixels = tile.getWidth() * tile.getHeight();
+        int[] iterationsCount = tile.getIterationsCount();
+        double[] smoothColors = tile.getSmoothColors();
+        out.writeByte(RESULT);
+        out.writeInt(id);
+        out.writeLong(nanos);
+        out.writeLong(iterations);
+        out.writeByte(bytes);
+        for (int i = 0; i < pixels; i++) {
+            if (bytes == 1)
+                out.writeByte(iterationsCount[i]);
+            else if (bytes == 2)
+                out.writeShort(iterationsCount[i]);
+            else
+                out.writeInt(iterationsCount[i]);
+        }
+        for (int i = 0; i < pixels; i++)
+            if (iterationsCount[i] < maxItr)
+                out.writeDouble(smoothColors[i]);
+    }
+
+    // Method to read the rest of a RESULT message (after its type byte and the id of the tile) into the rectangle {x, y, width, height} of the
+    // RenderContext object. Returns {nanos, iterations}.
+    public static long[] readResult(DataInputStream in, RenderContext context, int x, int y, int width, int height) throws IOException {
+        long nanos = in.readLong(), iterations = in.readLong();
+        int bytes = in.readByte(), maxItr = context.getPlane().getMaxIterations();
+        if (bytes != countBytes(maxItr))
+            throw new IOException("Invalid size of the iteration counts " + bytes);
+        int[] iterationsCount = context.getIterationsCount();
+        double[] smoothColors = context.getSmoothColors();
+        for (int j = y; j < y + height; j++)
+            for (int i = context.index(x, j), end = i + width; i < end; i++)
+                iterationsCount[i] = bytes == 1 ? in.readUnsignedByte() : bytes == 2 ? in.readUnsignedShort() : in.readInt();
+        for (int j = y; j < y + height; j++)
+            for (int i = context.index(x, j), end = i + width; i < end; i++)
+                smoothColors[i] = iterationsCount[i] < maxItr ? in.readDouble() : 0;
+        return new long[] { nanos, iterations };
+    }
+
+    // Method to get the number of bytes needed to send the iteration counts 0 <= count <= maxItr
+    public static int countBytes(int maxItr) {
+        return maxItr < 256 ? 1 : maxItr < 65536 ? 2 : 4;
+    }
+}
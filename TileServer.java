@@ -0,0 +1,288 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    TileServer serves the Mandelbrot and Julia sets as slippy map tiles over HTTP, so they can be explored in a web page with any tile map library:
+        GET /mandelbrot/{z}/{x}/{y}.png[?maxitr=N&color=smooth|gradient]
+        GET /julia/{z}/{x}/{y}.png[?c=C_REAL,C_IMAG&maxitr=N&color=smooth|gradient]
+        GET /stats
+    At zoom level z the square of the complex plane covered by the fractal (see MANDELBROT_BASE and JULIA_BASE) is split into 2^z x 2^z tiles of
+    TILE_SIZE x TILE_SIZE pixels, numbered from the top left corner like the tiles of a map.
+
+    Usage:
+    java Fractal serve [--port PORT] [--max-renders N] [--maxitr N] [--max-maxitr N]
+
+    It uses the HTTP server of the JDK. The connections are handled by virtual threads when the JVM has them (Java 21 and later), and by a cached pool
+    of platform threads otherwise, so a slow client or a request waiting for a render never holds up the other connections. The renders themselves
+    are CPU bound, so they are capped separately: at most maxRenders tiles are computed at the same time (each on the shared pool of the
+    FractalRenderer class), and the other requests wait for a permit. The maxitr of a request is capped by maxMaxItr (by default MAX_ITR_FACTOR times
+    the default maxItr), so a single request cannot hold a permit for hours.
+
+    Duplicate requests for the same tile (e.g. several clients showing the same view) are merged: the first request renders the tile and the others
+    wait for the same CompletableFuture, so a tile is never rendered twice at the same time.
+
+    The gradient colouring scheme needs the pixels on the left and above every pixel, so every tile is computed with one extra row and column of
+    pixels above and on the left of it, and the tiles join without seams.
+*/
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TileServer {
+    public static final int DEFAULT_PORT = 8080, TILE_SIZE = 256;
+    // Beyond this zoom level the pixels are too small for doubles
+    private static final int MAX_ZOOM = 40;
+    // The squares {realMin, imagMax, size} of the complex plane covered by the tiles of zoom level 0
+    private static final double[] MANDELBROT_BASE = { -2.5, 2, 4 }, JULIA_BASE = { -2, 2, 4 };
+    // The default largest maxitr of a request, as a multiple of the default maxItr
+    public static final int MAX_ITR_FACTOR = 10;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final Semaphore renders;
+    private final int maxRenders, defaultMaxItr, maxMaxItr;
+    // The tiles being rendered, by the path and the parameters of the tile
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder(), rendered = new LongAdder(), merged = new LongAdder(), renderNanos = new LongAdder();
+
+    public TileServer(int port, int maxRenders, int defaultMaxItr, int maxMaxItr) throws IOException {
+        if (defaultMaxItr > maxMaxItr)
+            throw new IllegalArgumentException("The default maxitr is larger than the largest maxitr");
+        this.maxRenders = maxRenders;
+        this.defaultMaxItr = defaultMaxItr;
+        this.maxMaxItr = maxMaxItr;
+        this.renders = new Semaphore(maxRenders, true);
+        this.executor = newThreadPerTaskExecutor("TileServer");
+        this.virtual = !(executor instanceof ThreadPoolExecutor);
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/mandelbrot/", this::handleTile);
+        server.createContext("/julia/", this::handleTile);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    // Method to create an executor which runs every task on a new virtual thread when the JVM supports them (looked up reflectively so that the program
+    // still runs on older JVMs), or on a cached pool of daemon platform threads otherwise
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Method to check whether the connections are handled by virtual threads
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Method to serve a tile
+    private void handleTile(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            // {"", fractal, z, x, y.png}
+            if (path.length != 5 || !path[4].endsWith(".png")) {
+                send(exchange, 404, "text/plain", "Not a tile: " + exchange.getRequestURI().getPath());
+                return;
+            }
+            int z = Integer.parseInt(path[2]), x = Integer.parseInt(path[3]), y = Integer.parseInt(path[4].substring(0, path[4].length() - 4));
+            if (z < 0 || z > MAX_ZOOM || x < 0 || y < 0 || x >= 1L << z || y >= 1L << z) {
+                send(exchange, 404, "text/plain", "No such tile");
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            boolean julia = path[1].equals("julia");
+            int maxItr = Integer.parseInt(query.getOrDefault("maxitr", String.valueOf(defaultMaxItr)));
+            int scheme = ColorScheme.parse(query.getOrDefault("color", "smooth"));
+            double cReal = 0, cImag = 0;
+            if (julia) {
+                String[] c = query.getOrDefault("c", "-0.4,0.6").split(",");
+                if (c.length != 2)
+                    throw new IllegalArgumentException("Invalid constant");
+                cReal = Double.parseDouble(c[0]);
+                cImag = Double.parseDouble(c[1]);
+            }
+            if (maxItr <= 0)
+                throw new IllegalArgumentException("Invalid maxitr");
+            if (maxItr > maxMaxItr)
+                throw new IllegalArgumentException("maxitr is larger than " + maxMaxItr);
+
+            // Merge the requests for the same tile
+            String key = String.format("%s/%d/%d/%d/%d/%d/%a/%a", path[1], z, x, y, maxItr, scheme, cReal, cImag);
+            CompletableFuture<byte[]> tile = new CompletableFuture<>(), existing = inFlight.putIfAbsent(key, tile);
+            if (existing != null) {
+                merged.increment();
+                tile = existing;
+            } else {
+                try {
+                    tile.complete(render(julia, z, x, y, maxItr, scheme, cReal, cImag));
+                } catch (Throwable e) {
+                    tile.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key);
+                }
+            }
+            exchange.getResponseHeaders().set("Cache-Control", "public, max-age=86400");
+            send(exchange, 200, "image/png", tile.get());
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, "text/plain", "Invalid request: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, "text/plain", "Interrupted");
+        } catch (ExecutionException e) {
+            send(exchange, 500, "text/plain", "The render failed: " + e.getCause());
+        }
+    }
+
+    // Method to render a tile into a PNG image, waiting for a permit to render
+    private byte[] render(boolean julia, int z, int x, int y, int maxItr, int scheme, double cReal, double cImag) throws InterruptedException,
+            IOException {
+        double[] base = julia ? JULIA_BASE : MANDELBROT_BASE;
+        double size = base[2] / (1L << z), realMin = base[0] + x * size, imagMax = base[1] - y * size;
+        ComplexPlane plane = julia ? new JuliaSet(cReal, cImag, maxItr) : new MandelbrotSet();
+        plane.setMaxIterations(maxItr);
+        plane.setROI(realMin, realMin + size, imagMax - size, imagMax);
+        plane.setCanvasSize(TILE_SIZE, TILE_SIZE);
+        // One extra row and column above and on the left of the tile, for the gradient colouring scheme
+        int width = TILE_SIZE + 1;
+        RenderContext context = new RenderContext(plane, -1, -1, width, width);
+        int[] rgb = new int[width * width];
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        renders.acquire();
+        try {
+            long start = System.nanoTime();
+            FractalRenderer.render(context);
+            ColorScheme.paint(scheme, context, 1, width, 1, rgb, 0);
+            // Encode the tile without the extra column
+            PngStreamWriter writer = new PngStreamWriter(png, TILE_SIZE, TILE_SIZE);
+            for (int row = 0; row < TILE_SIZE; row++)
+                writer.writeRows(rgb, row * width + 1, 1);
+            writer.close();
+            renderNanos.add(System.nanoTime() - start);
+            rendered.increment();
+        } finally {
+            renders.release();
+        }
+        return png.toByteArray();
+    }
+
+    // Method to serve the counters of the server
+    private void handleStats(HttpExchange exchange) throws IOException {
+        send(exchange, 200, "text/plain", toString() + "\n");
+    }
+
+    @Override
+    public String toString() {
+        long count = rendered.sum();
+        return String.format("%d requests, %d tiles rendered (mean %.2fms), %d requests merged, %d rendering now (at most %d), %s threads",
+                requests.sum(), count, count == 0 ? 0 : renderNanos.sum() / 1e6 / count, merged.sum(), maxRenders - renders.availablePermits(),
+                maxRenders, isVirtual() ? "virtual" : "platform");
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query == null)
+            return values;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0)
+                values.put(pair.substring(0, equals), pair.substring(equals + 1));
+        }
+        return values;
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, String body) throws IOException {
+        send(exchange, status, type, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Method to print an error message followed by the usage of the tile server
+    private static void printUsage(String errMessage) {
+        System.out.printf("\u001B[31mError: %s.\033[0m\n", errMessage);
+        System.out.println("Usage: java Fractal serve [--port PORT] [--max-renders N] [--maxitr N] [--max-maxitr N]\n");
+        System.out.println("Serves the tiles /mandelbrot/{z}/{x}/{y}.png and /julia/{z}/{x}/{y}.png?c=C_REAL,C_IMAG (both also take maxitr=N and");
+        System.out.println("color=smooth|gradient) on the port (default " + DEFAULT_PORT + "). At most N tiles are rendered at the same time (default: the");
+        System.out.println("number of processors) and MAXITR defaults to 1000. The requests with a larger maxitr than --max-maxitr (default " + MAX_ITR_FACTOR);
+        System.out.println("times MAXITR) are rejected.");
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int port = DEFAULT_PORT, maxRenders = Runtime.getRuntime().availableProcessors(), maxItr = 1000, maxMaxItr = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                int value = Integer.parseInt(args[i + 1]);
+                if (value < 0 || value == 0 && !args[i].equals("--port"))
+                    throw new IllegalArgumentException();
+                if (args[i].equals("--port"))
+                    port = value;
+                else if (args[i].equals("--max-renders"))
+                    maxRenders = value;
+                else if (args[i].equals("--maxitr"))
+                    maxItr = value;
+                else if (args[i].equals("--max-maxitr"))
+                    maxMaxItr = value;
+                else
+                    throw new IllegalArgumentException();
+                i++;
+            }
+            if (maxMaxItr == 0)
+                maxMaxItr = (int) Math.min((long) MAX_ITR_FACTOR * maxItr, Integer.MAX_VALUE);
+            else if (maxMaxItr < maxItr)
+                throw new IllegalArgumentException();
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            printUsage("Invalid usage of arguments");
+            System.exit(0);
+        }
+        try {
+            TileServer server = new TileServer(port, maxRenders, maxItr, maxMaxItr);
+            server.start();
+            System.out.printf("Serving tiles on http://localhost:%d/mandelbrot/{z}/{x}/{y}.png (%s threads, at most %d renders at a time)\n",
+                    server.getPort(), server.isVirtual() ? "virtual" : "platform", maxRenders);
+        } catch (IOException e) {
+            printUsage("Could not listen on the port " + port + ": " + e.getMessage());
+            System.exit(0);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    BenchmarkOperations defines the operations measured by the benchmarks, so the JMH benchmarks (see the jmh directory) and the plain harness
+    (FractalBenchmark) measure exactly the same work:
+      - kernel.*    the countIterations kernels of MandelbrotSet and JuliaSet on fixed 64 x 64 views inside the set, on its boundary and outside of it,
+                    and the kernels of user supplied formulas (FormulaPlane) compiled to bytecode against their interpreter on boundary views
+      - kernel.scalar.*, kernel.simd.*
+                    the row kernels: the scalar ComplexPlane.countRow loop against the SIMD kernel (VectorKernel) on the same views. The SIMD
+                    operations are only available when the SIMD kernel is (see RowKernel)
+      - render.*    full frame renders (FractalRenderer.render) of the Mandelbrot set at several values of maxItr and resolutions
+      - mapping.*   ComplexPlane.setROI and the mapping of every pixel of an 800 x 800 canvas to a complex number
+      - color.*     the colouring schemes (ColorScheme.paint) and the path of the GUI which colours a view into a BufferedImage and paints it
+
+    Every operation returns a value which depends on its work, so a benchmark which consumes it cannot let the JIT compiler remove the work. The JMH
+    benchmarks live in a package (JMH does not accept benchmarks in the default package), from which the classes of the generator cannot be named, so
+    they create the operations through this class by reflection.
+*/
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+public class BenchmarkOperations {
+    // The size of the views of the kernels
+    public static final int KERNEL_SIZE = 64;
+    // The size of the canvas of the mapping and the colouring
+    public static final int CANVAS_SIZE = 800;
+
+    // The factories of the operations by name, in the order the benchmarks are run. A factory returns null if its operation is not available.
+    private static final Map<String, Supplier<LongSupplier>> OPERATIONS = new LinkedHashMap<>();
+
+    static {
+        // The kernels on views inside the set, on its boundary and outside of it
+        kernel("mandelbrot.interior", MandelbrotSet::new, -0.3, -0.1, -0.1, 0.1);
+        kernel("mandelbrot.boundary", MandelbrotSet::new, -0.76, -0.74, 0.1, 0.12);
+        kernel("mandelbrot.exterior", MandelbrotSet::new, 0.5, 1.5, 0.5, 1.5);
+        // The Douady rabbit, whose filled Julia set has an interior
+        kernel("julia.interior", () -> new JuliaSet(-0.123, 0.745), -0.05, 0.05, -0.05, 0.05);
+        kernel("julia.boundary", () -> new JuliaSet(-0.123, 0.745), 0.3, 0.4, 0.05, 0.15);
+        kernel("julia.exterior", () -> new JuliaSet(-0.123, 0.745), 1.5, 2.5, 1.5, 2.5);
+        // The formulas compiled to bytecode and interpreted (z^2 + c on the view of kernel.mandelbrot.boundary)
+        for (String source : new String[] { "mandelbrot", "burningship" })
+            for (boolean compiled : new boolean[] { true, false }) {
+                String name = String.format("formula.%s.%s", source, compiled ? "compiled" : "interp");
+                if (source.equals("mandelbrot"))
+                    kernel(name, () -> formula(source, compiled), -0.76, -0.74, 0.1, 0.12);
+                else
+                    kernel(name, () -> formula(source, compiled), -1.8, -1.7, -0.08, 0.02);
+            }
+        // The scalar and the SIMD row kernels
+        rows("mandelbrot.boundary", MandelbrotSet::new, -0.76, -0.74, 0.1, 0.12);
+        rows("mandelbrot.exterior", MandelbrotSet::new, 0.5, 1.5, 0.5, 1.5);
+        rows("julia.boundary", () -> new JuliaSet(-0.123, 0.745), 0.3, 0.4, 0.05, 0.15);
+
+        // Full frame renders
+        for (int maxItr : new int[] { 250, 1000, 4000 })
+            for (int size : new int[] { 400, 800 })
+                OPERATIONS.put(String.format("render.%d.%dx%d", maxItr, size, size), () -> {
+                    MandelbrotSet plane = new MandelbrotSet();
+                    plane.setMaxIterations(maxItr);
+                    RenderContext context = new RenderContext(plane, size, size);
+                    return () -> {
+                        FractalRenderer.render(context);
+                        return context.getIterationsCount()[size / 2];
+                    };
+                });
+
+        // The mapping of the pixels to the complex numbers
+        OPERATIONS.put("mapping.setROI", () -> {
+            MandelbrotSet plane = new MandelbrotSet();
+            plane.setCanvasSize(CANVAS_SIZE, CANVAS_SIZE);
+            return () -> {
+                plane.setROI(-2, 1, -1.5, 1.5);
+                return (long) plane.getReal(CANVAS_SIZE / 2);
+            };
+        });
+        OPERATIONS.put("mapping.pixels", () -> {
+            MandelbrotSet plane = new MandelbrotSet();
+            plane.setCanvasSize(CANVAS_SIZE, CANVAS_SIZE);
+            return () -> {
+                plane.setROI(-2, 1, -1.5, 1.5);
+                double sum = 0;
+                for (int y = 0; y < CANVAS_SIZE; y++)
+                    for (int x = 0; x < CANVAS_SIZE; x++)
+                        sum += plane.getReal(x) + plane.getImaginary(y);
+                return (long) sum;
+            };
+        });
+
+        // The colouring of a rendered view
+        OPERATIONS.put("color.smooth", () -> color(ColorScheme.SMOOTH));
+        OPERATIONS.put("color.gradient", () -> color(ColorScheme.GRADIENT));
+        // What the GUI does for every finished pass: colour into a new image and paint it into the panel
+        OPERATIONS.put("color.paintComponent", () -> {
+            RenderContext context = renderedView();
+            BufferedImage panel = new BufferedImage(CANVAS_SIZE, CANVAS_SIZE, BufferedImage.TYPE_INT_ARGB);
+            return () -> {
+                BufferedImage image = new BufferedImage(CANVAS_SIZE, CANVAS_SIZE, BufferedImage.TYPE_INT_ARGB);
+                ColorScheme.paint(ColorScheme.SMOOTH, context, 0, CANVAS_SIZE, 1, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0);
+                Graphics g = panel.getGraphics();
+                g.drawImage(image, 0, 0, null);
+                g.dispose();
+                return panel.getRGB(CANVAS_SIZE / 2, CANVAS_SIZE / 2);
+            };
+        });
+    }
+
+    // Method to get the names of the benchmarks, in the order they are run
+    public static List<String> names() {
+        return new ArrayList<>(OPERATIONS.keySet());
+    }
+
+    // Method to create the operation of the benchmark with the given name. Returns null if it is not available in this JVM (e.g. the SIMD kernel).
+    public static LongSupplier create(String name) {
+        Supplier<LongSupplier> factory = OPERATIONS.get(name);
+        if (factory == null)
+            throw new IllegalArgumentException("Unknown benchmark " + name);
+        return factory.get();
+    }
+
+    // Method to get the number of pixels computed by an operation of the benchmark with the given name (1 if it is not measured per pixel)
+    public static int pixels(String name) {
+        return name.startsWith("kernel.") ? KERNEL_SIZE * KERNEL_SIZE : name.equals("mapping.pixels") ? CANVAS_SIZE * CANVAS_SIZE : 1;
+    }
+
+    // Method to add the operation which counts the iterations of the KERNEL_SIZE x KERNEL_SIZE pixels of the given ROI with countIterations
+    private static void kernel(String name, Supplier<ComplexPlane> planes, double realMin, double realMax, double imagMin, double imagMax) {
+        OPERATIONS.put("kernel." + name, () -> {
+            ComplexPlane plane = view(planes.get(), realMin, realMax, imagMin, imagMax);
+            double[] smooth = new double[1];
+            return () -> {
+                long sum = 0;
+                for (int y = 0; y < KERNEL_SIZE; y++)
+                    for (int x = 0; x < KERNEL_SIZE; x++)
+                        sum += plane.countIterations(plane.getReal(x), plane.getImaginary(y), smooth, 0);
+                return sum + (long) smooth[0];
+            };
+        });
+    }
+
+    // Method to add the operations which count the iterations of the pixels of the given ROI row by row into a RenderContext, with the scalar
+    // countRow loop of the ComplexPlane object and with the SIMD kernel
+    private static void rows(String name, Supplier<ComplexPlane> planes, double realMin, double realMax, double imagMin, double imagMax) {
+        OPERATIONS.put("kernel.scalar." + name, () -> {
+            ComplexPlane plane = view(planes.get(), realMin, realMax, imagMin, imagMax);
+            RenderContext context = new RenderContext(plane, KERNEL_SIZE, KERNEL_SIZE);
+            return () -> {
+                long sum = 0;
+                for (int y = 0; y < KERNEL_SIZE; y++)
+                    sum += plane.countRow(context, 0, KERNEL_SIZE, y);
+                return sum;
+            };
+        });
+        OPERATIONS.put("kernel.simd." + name, () -> {
+            RowKernel simd = RowKernel.vector();
+            if (simd == null)
+                return null;
+            RenderContext context = new RenderContext(view(planes.get(), realMin, realMax, imagMin, imagMax), KERNEL_SIZE, KERNEL_SIZE);
+            return () -> {
+                long sum = 0;
+                for (int y = 0; y < KERNEL_SIZE; y++)
+                    sum += simd.countRow(context, 0, KERNEL_SIZE, y);
+                return sum;
+            };
+        });
+    }
+
+    private static ComplexPlane view(ComplexPlane plane, double realMin, double realMax, double imagMin, double imagMax) {
+        plane.setROI(realMin, realMax, imagMin, imagMax);
+        plane.setCanvasSize(KERNEL_SIZE, KERNEL_SIZE);
+        return plane;
+    }
+
+    // Method to create the plane of a named formula with its compiled kernel or its interpreter
+    private static ComplexPlane formula(String name, boolean compiled) {
+        Formula formula = Formula.parse(name);
+        return new FormulaPlane(formula, compiled ? formula.compile() : formula.interpret());
+    }
+
+    // Method to render the default view of the Mandelbrot set on the canvas
+    private static RenderContext renderedView() {
+        RenderContext context = new RenderContext(new MandelbrotSet(), CANVAS_SIZE, CANVAS_SIZE);
+        FractalRenderer.render(context);
+        return context;
+    }
+
+    // Method to create the operation which colours a rendered view with the given scheme
+    private static LongSupplier color(int scheme) {
+        RenderContext context = renderedView();
+        int[] rgb = new int[CANVAS_SIZE * CANVAS_SIZE];
+        return () -> {
+            ColorScheme.paint(scheme, context, 0, CANVAS_SIZE, 1, rgb, 0);
+            return rgb[CANVAS_SIZE / 2 * CANVAS_SIZE + CANVAS_SIZE / 2];
+        };
+    }
+}
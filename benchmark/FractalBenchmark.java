@@ -0,0 +1,138 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    FractalBenchmark is the plain harness of the benchmarks, a fallback for the JMH benchmarks (see the jmh directory) which runs without a build tool.
+    It measures the operations of BenchmarkOperations, which lists the benchmarks.
+
+    It works like a JMH benchmark: every benchmark runs a number of warmup iterations followed by measurement iterations, each of which calls the
+    operation repeatedly for a given time. The results are consumed by a sink so that the JIT compiler cannot remove the work. Besides the time per
+    operation (or per pixel) it reports the bytes allocated per operation by all threads (the renders run on the threads of the pool) and the number of
+    garbage collections and their time during the measurement.
+
+    Usage (from the directory of the sources, after compiling them):
+        javac -cp . -d . benchmark/*.java
+        java FractalBenchmark [-wi WARMUP_ITERATIONS] [-i ITERATIONS] [-t MILLISECONDS] [REGEX]
+    REGEX selects the benchmarks whose names contain a match (e.g. "kernel" or "render\.1000"). The kernel.simd.* benchmarks only run when the SIMD
+    kernel is available (see RowKernel), e.g. java --add-modules jdk.incubator.vector FractalBenchmark kernel.s
+*/
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+public class FractalBenchmark {
+    private static int warmupIterations = 2, iterations = 5;
+    private static long iterationTime = 1000;
+    private static Pattern filter = Pattern.compile("");
+    // Consumes the results of the operations
+    private static volatile long sink;
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final List<GarbageCollectorMXBean> COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+
+    public static void main(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            try {
+                if (args[i].equals("-wi"))
+                    warmupIterations = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-i"))
+                    iterations = Integer.parseInt(args[++i]);
+                else if (args[i].equals("-t"))
+                    iterationTime = Long.parseLong(args[++i]);
+                else
+                    filter = Pattern.compile(args[i]);
+            } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+                System.out.println("\033[0;31mError:\033[0m Invalid usage of arguments\n");
+                System.out.println("Usage: java FractalBenchmark [-wi WARMUP_ITERATIONS] [-i ITERATIONS] [-t MILLISECONDS] [REGEX]");
+                System.exit(0);
+            }
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        System.setProperty("java.awt.headless", "true");
+        System.out.printf("# %d warmup and %d measurement iterations of %dms, parallelism %d\n", warmupIterations, iterations, iterationTime,
+                FractalRenderer.getParallelism());
+        System.out.printf("%-36s %5s %12s %10s %-10s %14s %6s %8s\n", "Benchmark", "Cnt", "Score", "Error", "Units", "Alloc (B/op)", "GCs",
+                "GC time");
+
+        for (String name : BenchmarkOperations.names()) {
+            if (!filter.matcher(name).find())
+                continue;
+            LongSupplier operation = BenchmarkOperations.create(name);
+            if (operation == null) {
+                System.out.printf("# %s skipped: the SIMD kernel needs --add-modules jdk.incubator.vector and the compiled VectorKernel class\n", name);
+                continue;
+            }
+            int pixels = BenchmarkOperations.pixels(name);
+            if (pixels > 1)
+                run(name, "ns/pixel", 1, pixels, operation);
+            else if (name.startsWith("mapping."))
+                run(name, "ns/op", 1, 1, operation);
+            else
+                run(name, "ms/op", 1e-6, 1, operation);
+        }
+        System.exit(0);
+    }
+
+    // Method to run the warmup and the measurement iterations of a benchmark and print its results. The score is the time per operation divided by
+    // units (e.g. the number of pixels of an operation), multiplied by scale (e.g. 1e-6 for milliseconds).
+    private static void run(String name, String unit, double scale, long units, LongSupplier operation) {
+        if (!filter.matcher(name).find())
+            return;
+        for (int i = 0; i < warmupIterations; i++)
+            iteration(operation);
+        double[] scores = new double[iterations];
+        long operations = 0, allocated = 0, collections = 0, collectionTime = 0;
+        for (int i = 0; i < iterations; i++) {
+            long gcCount = gcCount(), gcTime = gcTime(), bytes = allocatedBytes();
+            long[] result = iteration(operation);
+            allocated += allocatedBytes() - bytes;
+            collections += gcCount() - gcCount;
+            collectionTime += gcTime() - gcTime;
+            operations += result[0];
+            scores[i] = (double) result[1] / result[0] / units * scale;
+        }
+        double mean = Arrays.stream(scores).average().orElse(0), deviation = 0;
+        for (double score : scores)
+            deviation += (score - mean) * (score - mean);
+        deviation = iterations > 1 ? Math.sqrt(deviation / (iterations - 1)) : 0;
+        System.out.printf("%-36s %5d %12.3f +- %8.3f %-10s %14.1f %6d %6dms\n", name, iterations, mean, deviation, unit,
+                (double) allocated / operations, collections, collectionTime);
+    }
+
+    // Method to call the operation repeatedly for iterationTime milliseconds. Returns the number of operations and the time taken in nanoseconds.
+    private static long[] iteration(LongSupplier operation) {
+        long start = System.nanoTime(), end = start + iterationTime * 1000000, count = 0, now, sum = 0;
+        do {
+            sum += operation.getAsLong();
+            count++;
+            now = System.nanoTime();
+        } while (now < end);
+        sink = sum;
+        return new long[] { count, now - start };
+    }
+
+    // Method to get the number of bytes allocated so far by all the live threads
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds()))
+            total += Math.max(0, bytes);
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : COLLECTORS)
+            total += Math.max(0, collector.getCollectionCount());
+        return total;
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : COLLECTORS)
+            total += Math.max(0, collector.getCollectionTime());
+        return total;
+    }
+}
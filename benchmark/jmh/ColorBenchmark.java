@@ -0,0 +1,46 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    ColorBenchmark measures the colouring of a rendered 800 x 800 view (the color.* operations of BenchmarkOperations) in milliseconds per view: the
+    smooth and gradient colouring schemes and the path of the GUI which colours a view into a new BufferedImage and paints it into the panel.
+*/
+
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ColorBenchmark extends OperationBenchmark {
+    @Param({ "smooth", "gradient", "paintComponent" })
+    public String pass;
+
+    private LongSupplier operation;
+
+    @Setup
+    public void setup() {
+        operation = operation("color." + pass);
+    }
+
+    @Benchmark
+    public long color() {
+        return operation.getAsLong();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    KernelBenchmark measures the kernels (the kernel.* operations of BenchmarkOperations) in nanoseconds per pixel: the countIterations kernels of
+    MandelbrotSet and JuliaSet inside, on the boundary of and outside the sets, the compiled and interpreted formulas and the scalar and SIMD row
+    kernels.
+*/
+
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+// An operation computes the 64 x 64 pixels of a view (BenchmarkOperations.KERNEL_SIZE)
+@OperationsPerInvocation(64 * 64)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark extends OperationBenchmark {
+    @Param({ "mandelbrot.interior", "mandelbrot.boundary", "mandelbrot.exterior", "julia.interior", "julia.boundary", "julia.exterior",
+            "formula.mandelbrot.compiled", "formula.mandelbrot.interp", "formula.burningship.compiled", "formula.burningship.interp",
+            "scalar.mandelbrot.boundary", "simd.mandelbrot.boundary", "scalar.mandelbrot.exterior", "simd.mandelbrot.exterior",
+            "scalar.julia.boundary", "simd.julia.boundary" })
+    public String kernel;
+
+    private LongSupplier operation;
+
+    @Setup
+    public void setup() {
+        operation = operation("kernel." + kernel);
+    }
+
+    @Benchmark
+    public long iterate() {
+        return operation.getAsLong();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    MappingBenchmark measures the mapping of the pixels to the complex numbers (the mapping.* operations of BenchmarkOperations): ComplexPlane.setROI
+    in nanoseconds per call and the mapping of every pixel of an 800 x 800 canvas in nanoseconds per pixel.
+*/
+
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark extends OperationBenchmark {
+    private LongSupplier setROI, pixels;
+
+    @Setup
+    public void setup() {
+        setROI = operation("mapping.setROI");
+        pixels = operation("mapping.pixels");
+    }
+
+    @Benchmark
+    public long setROI() {
+        return setROI.getAsLong();
+    }
+
+    // An operation maps the 800 x 800 pixels of the canvas (BenchmarkOperations.CANVAS_SIZE)
+    @Benchmark
+    @OperationsPerInvocation(800 * 800)
+    public long pixels() {
+        return pixels.getAsLong();
+    }
+}
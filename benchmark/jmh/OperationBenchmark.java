@@ -0,0 +1,26 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    OperationBenchmark is the base class of the JMH benchmarks. JMH does not accept benchmarks in the default package and the classes of the generator
+    cannot be named from any other package, so the benchmarks create the operations of BenchmarkOperations by reflection and measure calls to them.
+*/
+
+package jmh;
+
+import java.util.function.LongSupplier;
+
+public abstract class OperationBenchmark {
+    // Method to create the operation of the benchmark with the given name (see BenchmarkOperations)
+    protected static LongSupplier operation(String name) {
+        LongSupplier operation;
+        try {
+            operation = (LongSupplier) Class.forName("BenchmarkOperations").getMethod("create", String.class).invoke(null, name);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the benchmark " + name, e);
+        }
+        if (operation == null)
+            throw new IllegalStateException(name + " is not available: the SIMD kernel needs --add-modules jdk.incubator.vector and the compiled "
+                    + "VectorKernel class");
+        return operation;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    RenderBenchmark measures full frame renders of the Mandelbrot set (the render.* operations of BenchmarkOperations) at several values of maxItr and
+    resolutions, in milliseconds per render.
+*/
+
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark extends OperationBenchmark {
+    @Param({ "250", "1000", "4000" })
+    public int maxItr;
+
+    @Param({ "400", "800" })
+    public int size;
+
+    private LongSupplier operation;
+
+    @Setup
+    public void setup() {
+        operation = operation(String.format("render.%d.%dx%d", maxItr, size, size));
+    }
+
+    @Benchmark
+    public long render() {
+        return operation.getAsLong();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+    Copyright (C) 2020, Sathira Silva. (E/17/331)
+
+    VectorKernel is the SIMD RowKernel. It iterates as many pixels of a row as there are lanes in the preferred DoubleVector species at the same time,
+    with a mask of the lanes which have not escaped yet, until every lane has escaped or reached maxItr.
+
+    Every lane performs exactly the same IEEE operations in the same order as the scalar kernels of MandelbrotSet and JuliaSet (no fused multiply-adds
+    and no lanewise transcendental functions), so the numbers of iterations are bit for bit the same. The potential values are computed from the final
+    values of z with Math.log after the vector loop, so they are bit for bit the same as well.
+
+    It supports MandelbrotSet and JuliaSet objects without the interior checks; countRow returns -1 for the others.
+
+    This class needs the jdk.incubator.vector module (see RowKernel for how to compile and run it).
+*/
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorKernel implements RowKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    @Override
+    public long countRow(RenderContext context, int x0, int x1, int y) {
+        ComplexPlane plane = context.getPlane();
+        if (plane.isInteriorChecks() || (plane.getClass() != MandelbrotSet.class && plane.getClass() != JuliaSet.class))
+            return -1;
+        boolean julia = plane instanceof JuliaSet;
+        int maxItr = plane.getMaxIterations();
+        double imaginary = plane.getImaginary(context.getTop() + y), cReal = 0d, cImag = 0d;
+        if (julia) {
+            cReal = ((JuliaSet) plane).getConstant().getReal();
+            cImag = ((JuliaSet) plane).getConstant().getImaginary();
+        }
+        int[] iterationsCount = context.getIterationsCount();
+        double[] smoothColors = context.getSmoothColors();
+        double[] real = new double[LANES], abs2 = new double[LANES], counts = new double[LANES];
+        long iterations = 0;
+
+        for (int x = x0; x < x1; x += LANES) {
+            int n = Math.min(LANES, x1 - x);
+            for (int i = 0; i < LANES; i++)
+                real[i] = plane.getReal(context.getLeft() + x + Math.min(i, n - 1));
+            DoubleVector pixelReal = DoubleVector.fromArray(SPECIES, real, 0);
+            DoubleVector pixelImag = DoubleVector.broadcast(SPECIES, imaginary);
+            // c is the pixel for the Mandelbrot set and the constant for the Julia set, z starts from 0 or from the pixel respectively
+            DoubleVector addReal = julia ? DoubleVector.broadcast(SPECIES, cReal) : pixelReal;
+            DoubleVector addImag = julia ? DoubleVector.broadcast(SPECIES, cImag) : pixelImag;
+            DoubleVector zReal = julia ? pixelReal : DoubleVector.zero(SPECIES);
+            DoubleVector zImag = julia ? pixelImag : DoubleVector.zero(SPECIES);
+            DoubleVector zReal2 = zReal.mul(zReal), zImag2 = zImag.mul(zImag);
+            DoubleVector count = DoubleVector.zero(SPECIES);
+
+            // The lanes which have not escaped yet (Escape radius = 50)
+            VectorMask<Double> active = zReal2.add(zImag2).compare(VectorOperators.LT, 100d);
+            for (int k = 0; k < maxItr && active.anyTrue(); k++) {
+                // z = z^2 + c, only in the active lanes
+                DoubleVector nextImag = zReal.mul(2d).mul(zImag).add(addImag);
+                DoubleVector nextReal = zReal2.sub(zImag2).add(addReal);
+                zImag = zImag.blend(nextImag, active);
+                zReal = zReal.blend(nextReal, active);
+                zReal2 = zReal.mul(zReal);
+                zImag2 = zImag.mul(zImag);
+                count = count.add(1d, active);
+                active = active.and(zReal2.add(zImag2).compare(VectorOperators.LT, 100d));
+            }
+
+            zReal2.add(zImag2).intoArray(abs2, 0);
+            count.intoArray(counts, 0);
+            for (int i = 0; i < n; i++) {
+                int index = context.index(x + i, y);
+                iterationsCount[index] = (int) counts[i];
+                smoothColors[index] = Math.log(1.5 + counts[i] - Math.log(Math.log(Math.sqrt(abs2[i]))) / Math.log(2)) / 3.4;
+                iterations += iterationsCount[index];
+            }
+        }
+        return iterations;
+    }
+}